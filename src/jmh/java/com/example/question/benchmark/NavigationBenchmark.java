@@ -0,0 +1,88 @@
+package com.example.question.benchmark;
+
+import com.example.question.model.Question;
+import com.example.question.service.CompiledQuestionnaire;
+import com.example.question.service.QuestionnaireService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Navegação no questionário: busca por código, reconstrução do ramo, subtree, resumo e validação de
+ * resposta, sobre questionários sintéticos de vários formatos e tamanhos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NavigationBenchmark {
+
+	@Param({"CHAIN", "WIDE", "NESTED"})
+	public SyntheticQuestionnaires.Shape shape;
+
+	@Param({"100", "1000", "10000"})
+	public int size;
+
+	private QuestionnaireService service;
+	private CompiledQuestionnaire graph;
+	private List<Map<String, Object>> answers;
+	private List<Question> branch;
+	private String lastCode;
+	private String subtreeRoot;
+	private Question validated;
+	private Map<String, Object> validAnswer;
+
+	@Setup
+	public void setUp() {
+		// o serviço só é usado pelos métodos que recebem o snapshot; o arquivo padrão apenas o inicializa
+		service = new QuestionnaireService("questionnaire.json", "questionnaires", 1000, "");
+		graph = CompiledQuestionnaire.compile(SyntheticQuestionnaires.generate(shape, size));
+		answers = SyntheticQuestionnaires.answeredBranch(graph);
+		branch = service.getAnsweredBranch(graph, answers);
+		lastCode = SyntheticQuestionnaires.code(size - 1);
+		// filho do root no ramo respondido: a subtree podada por uma edição do root
+		subtreeRoot = branch.size() > 1 ? branch.get(1).getCode() : lastCode;
+		validated = graph.question(graph.rootId());
+		validAnswer = answers.get(0);
+	}
+
+	@Benchmark
+	public Question findQuestionByCode() {
+		return service.findQuestionByCode(graph, lastCode);
+	}
+
+	@Benchmark
+	public List<Question> getAnsweredBranch() {
+		return service.getAnsweredBranch(graph, answers);
+	}
+
+	@Benchmark
+	public Set<String> collectSubtreeCodes() {
+		return service.collectSubtreeCodes(graph, subtreeRoot);
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> buildAnsweredSummary() {
+		return service.buildAnsweredSummary(answers, branch);
+	}
+
+	@Benchmark
+	public boolean isValidAnswer() {
+		return service.isValidAnswer(validated, validAnswer);
+	}
+}
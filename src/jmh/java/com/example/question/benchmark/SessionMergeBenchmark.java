@@ -0,0 +1,102 @@
+package com.example.question.benchmark;
+
+import com.example.question.model.Answer;
+import com.example.question.service.BranchCursor;
+import com.example.question.service.CompiledQuestionnaire;
+import com.example.question.service.SessionAnswers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merge e poda de um passo de /question_next_step sobre o estado completo da sessão, na mesma
+ * sequência do controller: indexa as respostas salvas, poda a subtree quando a edição muda o fluxo,
+ * aplica as respostas recebidas, atualiza o ramo persistido e monta a lista gravada.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionMergeBenchmark {
+
+	@Param({"CHAIN", "WIDE", "NESTED"})
+	public SyntheticQuestionnaires.Shape shape;
+
+	@Param({"100", "1000", "10000"})
+	public int size;
+
+	private CompiledQuestionnaire graph;
+	private List<Map<String, Object>> fullBranch;
+	private List<Map<String, Object>> withoutLast;
+	private List<String> fullPath;
+	private List<String> pathWithoutLast;
+	private Map<String, Object> lastAnswer;
+	private String rootCode;
+	private String editedRootValue;
+
+	@Setup
+	public void setUp() {
+		graph = CompiledQuestionnaire.compile(SyntheticQuestionnaires.generate(shape, size));
+		fullBranch = SyntheticQuestionnaires.answeredBranch(graph);
+		withoutLast = fullBranch.subList(0, fullBranch.size() - 1);
+		fullPath = BranchCursor.build(SessionAnswers.of(graph, fullBranch)).codes();
+		pathWithoutLast = BranchCursor.build(SessionAnswers.of(graph, withoutLast)).codes();
+		lastAnswer = fullBranch.get(fullBranch.size() - 1);
+		rootCode = graph.code(graph.rootId());
+		// combos: outra opção (muda o fluxo); cadeia: outro texto (mesmo fluxo)
+		List<Answer> options = graph.question(graph.rootId()).getAnswers();
+		Object saved = fullBranch.get(0).get("value");
+		editedRootValue = "editado";
+		if (options != null) {
+			for (Answer option : options) {
+				if (!option.getCode().equals(saved)) editedRootValue = option.getCode();
+			}
+		}
+	}
+
+	/**
+	 * Passo comum: resposta da próxima pergunta, sem poda.
+	 */
+	@Benchmark
+	public List<Map<String, Object>> appendAnswer(Blackhole bh) {
+		SessionAnswers answers = SessionAnswers.of(graph, withoutLast);
+		BranchCursor cursor = BranchCursor.restore(graph, pathWithoutLast, graph.structureHash());
+		answers.put(String.valueOf(lastAnswer.get("questionCode")), lastAnswer.get("value"));
+		cursor.update(answers, answers.changedIds());
+		bh.consume(cursor.codes());
+		return answers.toList();
+	}
+
+	/**
+	 * Edição da primeira pergunta: poda do ramo inteiro (quando o fluxo muda) e novo percurso.
+	 */
+	@Benchmark
+	public List<Map<String, Object>> editRootAndPrune(Blackhole bh) {
+		SessionAnswers answers = SessionAnswers.of(graph, fullBranch);
+		BranchCursor cursor = BranchCursor.restore(graph, fullPath, graph.structureHash());
+		int root = graph.rootId();
+		String prevChild = graph.nextCode(root, answers.valueString(root));
+		String newChild = graph.nextCode(root, editedRootValue);
+		if (!Objects.equals(prevChild, newChild)) bh.consume(answers.clearSubtree(graph.idOf(prevChild)));
+		answers.put(rootCode, editedRootValue);
+		cursor.update(answers, answers.changedIds());
+		bh.consume(cursor.codes());
+		return answers.toList();
+	}
+}
@@ -0,0 +1,126 @@
+package com.example.question.benchmark;
+
+import com.example.question.model.Answer;
+import com.example.question.model.ChildQuestion;
+import com.example.question.model.Question;
+import com.example.question.model.Questionnaire;
+import com.example.question.service.CompiledQuestionnaire;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Questionários sintéticos para os benchmarks, em três formatos:
+ * CHAIN (cadeia de perguntas simple-text), WIDE (um combo com uma opção por pergunta folha) e
+ * NESTED (árvore binária de combos, folhas simple-text).
+ */
+public final class SyntheticQuestionnaires {
+
+	public enum Shape { CHAIN, WIDE, NESTED }
+
+	private SyntheticQuestionnaires() {
+	}
+
+	static Questionnaire generate(Shape shape, int size) {
+		List<Question> questions = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			switch (shape) {
+				case CHAIN -> questions.add(text(i, i + 1 < size ? code(i + 1) : null));
+				case WIDE -> {
+					if (i == 0) {
+						List<String> children = new ArrayList<>(size - 1);
+						for (int c = 1; c < size; c++) children.add(code(c));
+						questions.add(combo(0, children));
+					} else {
+						questions.add(text(i, null));
+					}
+				}
+				case NESTED -> {
+					int left = 2 * i + 1;
+					int right = 2 * i + 2;
+					if (right < size) questions.add(combo(i, List.of(code(left), code(right))));
+					else questions.add(text(i, left < size ? code(left) : null));
+				}
+			}
+		}
+		Questionnaire questionnaire = new Questionnaire();
+		questionnaire.setQuestionnaireId("bench-" + shape + "-" + size);
+		questionnaire.setQuestions(questions);
+		return questionnaire;
+	}
+
+	/**
+	 * Respostas de um ramo completo, do root até uma folha. No combo largo escolhe a última opção e,
+	 * na árvore, alterna os lados para não favorecer a primeira opção de cada pergunta.
+	 */
+	static List<Map<String, Object>> answeredBranch(CompiledQuestionnaire graph) {
+		List<Map<String, Object>> answers = new ArrayList<>();
+		int id = graph.rootId();
+		int depth = 0;
+		while (id != CompiledQuestionnaire.NONE) {
+			Question q = graph.question(id);
+			String value;
+			if (q.getAnswers() != null && !q.getAnswers().isEmpty()) {
+				List<Answer> options = q.getAnswers();
+				value = options.get(options.size() == 2 ? depth % 2 : options.size() - 1).getCode();
+			} else {
+				value = "valor " + depth;
+			}
+			answers.add(answer(q.getCode(), value));
+			id = graph.nextId(id, value);
+			depth++;
+		}
+		return answers;
+	}
+
+	static Map<String, Object> answer(String questionCode, Object value) {
+		Map<String, Object> m = new HashMap<>(4);
+		m.put("questionCode", questionCode);
+		m.put("value", value);
+		return m;
+	}
+
+	static String code(int i) {
+		return "Q" + i;
+	}
+
+	private static Question text(int i, String child) {
+		Question q = base(i, "simple-text");
+		if (child != null) q.setChildQuestion(child(child));
+		return q;
+	}
+
+	private static Question combo(int i, List<String> children) {
+		Question q = base(i, "combo");
+		List<Answer> answers = new ArrayList<>(children.size());
+		for (int c = 0; c < children.size(); c++) {
+			Answer a = new Answer();
+			a.setCode(code(i) + "_" + c);
+			a.setDescription("Opção " + c);
+			a.setChildQuestion(child(children.get(c)));
+			answers.add(a);
+		}
+		q.setAnswers(answers);
+		return q;
+	}
+
+	private static Question base(int i, String type) {
+		Question q = new Question();
+		q.setQuestionId(Integer.toString(i + 1));
+		q.setCode(code(i));
+		q.setDescription("Pergunta " + i);
+		q.setCategoryCode("B");
+		q.setCategoryDescription("Benchmark");
+		q.setMandatory(true);
+		q.setAnswerDataTypeDescription(type);
+		return q;
+	}
+
+	private static ChildQuestion child(String code) {
+		ChildQuestion c = new ChildQuestion();
+		c.setCode(code);
+		return c;
+	}
+}
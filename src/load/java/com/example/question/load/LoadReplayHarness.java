@@ -0,0 +1,305 @@
+package com.example.question.load;
+
+import com.example.question.session.InMemorySessionStore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Harness de carga: sessões sintéticas concorrentes percorrem o questionário por HTTP contra a
+ * aplicação completa, com edições que mudam o fluxo e retomadas com a lista de respostas vazia.
+ *
+ * As sessões ficam em um Redis real, no armazenamento escolhido por {@code session.storage}: o de
+ * {@code load.redis-url} ou, sem ele, um container {@code redis:7} (Testcontainers). Sem Docker nem URL,
+ * o harness cai para o {@link InMemorySessionStore} (mesma semântica de versão, sem rede); o
+ * armazenamento usado sai no relatório.
+ *
+ * Fora do build normal: {@code mvn -P load test}. Parâmetros (system properties): load.sessions,
+ * load.concurrency, load.edit-ratio, load.resume-ratio, load.seed, load.warmup-sessions,
+ * load.redis-url e load.store-latency-ms. Relatório com vazão e latências p50/p99/p999 por fase no
+ * console e em target/load-report.txt.
+ *
+ * Apenas no armazenamento em memória, cada valor de load.store-latency-ms (padrão 0,20) é uma rodada com
+ * esse atraso em cada operação, simulando um pico de latência do Redis.
+ * Em um runtime Java 21+, {@code -Dspring.threads.virtual.enabled=true} repete as rodadas com requests e
+ * workers do lote em virtual threads; o modo em uso sai no relatório.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class LoadReplayHarness {
+
+	enum Phase { START, ANSWER, EDIT, RESUME, END }
+
+	// container iniciado pelo harness (null com load.redis-url ou sem Docker)
+	private static GenericContainer<?> redis;
+
+	@DynamicPropertySource
+	static void redisProperties(DynamicPropertyRegistry registry) {
+		String url = System.getProperty("load.redis-url");
+		if (url == null && DockerClientFactory.instance().isDockerAvailable()) {
+			redis = new GenericContainer<>(DockerImageName.parse("redis:7")).withExposedPorts(6379);
+			redis.start();
+			url = "redis://" + redis.getHost() + ":" + redis.getMappedPort(6379);
+		}
+		String redisUrl = url;
+		registry.add("load.store", () -> redisUrl == null ? "memory" : "redis");
+		if (redisUrl != null) registry.add("spring.data.redis.url", () -> redisUrl);
+	}
+
+	@AfterAll
+	static void stopRedis() {
+		if (redis != null) redis.stop();
+	}
+
+	@TestConfiguration
+	static class InMemorySessions {
+		@Bean
+		@Primary
+		@ConditionalOnProperty(name = "load.store", havingValue = "memory")
+		InMemorySessionStore inMemorySessionStore() {
+			return new InMemorySessionStore();
+		}
+	}
+
+	@LocalServerPort
+	private int port;
+
+	// apenas sem Redis
+	@Autowired(required = false)
+	private InMemorySessionStore store;
+
+	@Autowired
+	private Environment environment;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final AtomicLong errors = new AtomicLong();
+	private HttpClient client;
+
+	// pergunta inicial do questionário (igual para todas as sessões), para escolher outra opção nas edições
+	private volatile JsonNode firstQuestion;
+
+	@Test
+	void replay() throws Exception {
+		int sessions = Integer.getInteger("load.sessions", 2000);
+		int concurrency = Integer.getInteger("load.concurrency", 32);
+		int warmup = Integer.getInteger("load.warmup-sessions", 500);
+		double editRatio = Double.parseDouble(System.getProperty("load.edit-ratio", "0.2"));
+		double resumeRatio = Double.parseDouble(System.getProperty("load.resume-ratio", "0.1"));
+		long seed = Long.getLong("load.seed", 42L);
+
+		// HTTP/1.1 explícito: o cliente tentaria upgrade h2c a cada conexão
+		client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+				.executor(Executors.newFixedThreadPool(concurrency)).build();
+
+		// ids novos a cada execução: um Redis externo pode ter sessões de execuções anteriores
+		String runId = "load" + Long.toString(System.currentTimeMillis(), 36);
+
+		// aquecimento (JIT, caches de perguntas renderizadas) fora das medições
+		run(runId + "-warmup", warmup, concurrency, editRatio, resumeRatio, seed - 1, new Recorder());
+
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("armazenamento=%s session.storage=%s threads=%s java=%s%n",
+				store == null ? "redis" : "memória", environment.getProperty("session.storage", "value"),
+				Threading.VIRTUAL.isActive(environment) ? "virtual" : "plataforma", Runtime.version().feature()));
+		String[] latencies = store == null ? new String[] {"0"} : System.getProperty("load.store-latency-ms", "0,20").split(",");
+		for (int round = 0; round < latencies.length; round++) {
+			long millis = Long.parseLong(latencies[round].trim());
+			if (store != null) store.setLatency(Duration.ofMillis(millis));
+			Recorder recorder = new Recorder();
+			long start = System.nanoTime();
+			run(runId + "-" + round, sessions, concurrency, editRatio, resumeRatio, seed, recorder);
+			long elapsed = System.nanoTime() - start;
+			if (store != null) report.append(String.format("latência do armazenamento=%dms%n", millis));
+			report.append(recorder.report(elapsed, sessions, concurrency)).append(System.lineSeparator());
+		}
+		if (store != null) store.setLatency(Duration.ZERO);
+
+		System.out.println(report);
+		Files.createDirectories(Path.of("target"));
+		Files.writeString(Path.of("target", "load-report.txt"), report);
+		assertEquals(0, errors.get(), "respostas com erro");
+	}
+
+	private void run(String prefix, int sessions, int concurrency, double editRatio, double resumeRatio,
+					 long seed, Recorder recorder) throws Exception {
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+		List<Future<?>> pending = new ArrayList<>(sessions);
+		for (int i = 0; i < sessions; i++) {
+			String sessionId = prefix + "-" + i;
+			Random random = new Random(seed * 31 + i);
+			pending.add(workers.submit(() -> {
+				session(sessionId, random, editRatio, resumeRatio, recorder);
+				return null;
+			}));
+		}
+		for (Future<?> f : pending) f.get();
+		workers.shutdown();
+		workers.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Uma sessão do início ao resumo: cada passo envia a resposta da pergunta atual; eventualmente troca
+	 * a primeira resposta (mudando o fluxo) ou retoma com a lista vazia.
+	 */
+	private void session(String sessionId, Random random, double editRatio, double resumeRatio, Recorder recorder) throws Exception {
+		JsonNode response = step(sessionId, List.of(), Phase.START, recorder);
+		String firstCode = null;
+		String firstValue = null;
+		boolean edited = false;
+		for (int steps = 0; response != null && response.has("questions") && steps < 200; steps++) {
+			JsonNode question = response.get("questions").get(0);
+			if (!edited && firstCode != null && random.nextDouble() < editRatio) {
+				String other = otherOption(firstCode, firstValue);
+				if (other != null) {
+					edited = true;
+					firstValue = other;
+					response = step(sessionId, List.of(answer(firstCode, other)), Phase.EDIT, recorder);
+					continue;
+				}
+			}
+			if (random.nextDouble() < resumeRatio) {
+				response = step(sessionId, List.of(), Phase.RESUME, recorder);
+				continue;
+			}
+			String code = question.get("code").asText();
+			Object value = valueFor(question, random);
+			if (firstCode == null) {
+				firstCode = code;
+				firstValue = String.valueOf(value);
+				firstQuestion = question;
+			}
+			response = step(sessionId, List.of(answer(code, value)), Phase.ANSWER, recorder);
+		}
+	}
+
+	private String otherOption(String code, String current) {
+		JsonNode question = firstQuestion;
+		if (question == null || !question.has("answers") || !question.get("code").asText().equals(code)) return null;
+		for (JsonNode a : question.get("answers")) {
+			if (!a.get("code").asText().equals(current)) return a.get("code").asText();
+		}
+		return null;
+	}
+
+	private JsonNode step(String sessionId, List<Map<String, Object>> answers, Phase phase, Recorder recorder) throws Exception {
+		Map<String, Object> body = Map.of("sessionId", sessionId,
+				"questionnaire", Map.of("questionnaireId", "1", "answers", answers));
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/question_next_step"))
+				.header("Content-Type", "application/json")
+				.timeout(Duration.ofSeconds(30))
+				.POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+				.build();
+		long start = System.nanoTime();
+		HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+		long latency = System.nanoTime() - start;
+		if (response.statusCode() != 200) {
+			errors.incrementAndGet();
+			return null;
+		}
+		JsonNode json = mapper.readTree(response.body());
+		// a última resposta do fluxo devolve o resumo: conta como fase própria
+		recorder.record(json.has("summary") ? Phase.END : phase, latency);
+		return json;
+	}
+
+	private static Map<String, Object> answer(String code, Object value) {
+		return Map.of("questionCode", code, "value", value);
+	}
+
+	/**
+	 * Valor válido para o tipo da pergunta; combos e booleanos escolhem uma das opções ao acaso.
+	 */
+	private static Object valueFor(JsonNode question, Random random) {
+		JsonNode options = question.get("answers");
+		if (options != null && options.isArray() && options.size() > 0) {
+			return options.get(random.nextInt(options.size())).get("code").asText();
+		}
+		String type = question.path("answerDataTypeDescription").asText();
+		return switch (type) {
+			case "date" -> "1990-01-31";
+			case "dateTime" -> "2024-05-01T10:15:30";
+			case "amount" -> Map.of("amount", "1500.50", "currency", "BRL");
+			default -> "resposta " + random.nextInt(1000);
+		};
+	}
+
+	/**
+	 * Latências por fase (em nanos), acumuladas por todas as threads.
+	 */
+	private static final class Recorder {
+		private final Map<Phase, long[]> samples = new EnumMap<>(Phase.class);
+		private final Map<Phase, Integer> counts = new EnumMap<>(Phase.class);
+
+		synchronized void record(Phase phase, long nanos) {
+			long[] values = samples.computeIfAbsent(phase, p -> new long[1024]);
+			int n = counts.getOrDefault(phase, 0);
+			if (n == values.length) {
+				values = Arrays.copyOf(values, n * 2);
+				samples.put(phase, values);
+			}
+			values[n] = nanos;
+			counts.put(phase, n + 1);
+		}
+
+		synchronized String report(long elapsedNanos, int sessions, int concurrency) {
+			double seconds = elapsedNanos / 1e9;
+			StringBuilder out = new StringBuilder();
+			out.append(String.format("sessões=%d concorrência=%d duração=%.2fs%n", sessions, concurrency, seconds));
+			out.append(String.format("%-8s %10s %10s %10s %10s %10s%n", "fase", "passos", "passos/s", "p50 ms", "p99 ms", "p999 ms"));
+			long total = 0;
+			for (Phase phase : Phase.values()) {
+				int n = counts.getOrDefault(phase, 0);
+				if (n == 0) continue;
+				long[] sorted = Arrays.copyOf(samples.get(phase), n);
+				Arrays.sort(sorted);
+				total += n;
+				out.append(String.format("%-8s %10d %10.0f %10.3f %10.3f %10.3f%n", phase, n, n / seconds,
+						percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999)));
+			}
+			out.append(String.format("%-8s %10d %10.0f%n", "TOTAL", total, total / seconds));
+			return out.toString();
+		}
+
+		private static double percentile(long[] sorted, double p) {
+			int index = (int) Math.ceil(p * sorted.length) - 1;
+			return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+		}
+	}
+}
@@ -1,19 +1,46 @@
 package com.example.question.config;
 
+import com.example.question.service.QuestionnaireService;
+import com.example.question.session.BinarySessionCodec;
+import com.example.question.session.JsonSessionCodec;
+import com.example.question.session.SessionCodec;
+import com.example.question.session.SessionInvalidation;
+import com.example.question.session.SessionKeys;
+import com.example.question.session.SessionSymbolTable;
+import io.lettuce.core.ReadFrom;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
 public class RedisConfig {
 
+    /**
+     * Leituras que toleram atraso de replicação, em uma conexão própria que lê das réplicas conforme
+     * {@code session.redis.replica-reads} (um {@link ReadFrom} do Lettuce, ex.: replicaPreferred).
+     * Não é um bean {@link RedisConnectionFactory} para não substituir a conexão principal, criada pelo
+     * Spring Boot a partir de {@code spring.data.redis.*} (standalone, sentinel ou cluster, timeouts,
+     * pool e ClientResources com as métricas de latência {@code lettuce.command.*}).
+     */
     @Bean
-    public RedisConnectionFactory redisConnectionFactory() {
-        return new LettuceConnectionFactory();
+    @ConditionalOnProperty(name = "session.redis.replica-reads")
+    public ReplicaReadConnection replicaReadConnection(RedisConnectionFactory connectionFactory,
+                                                       @Value("${session.redis.replica-reads}") String readFrom) {
+        if (!(connectionFactory instanceof LettuceConnectionFactory primary)) {
+            throw new IllegalStateException("session.redis.replica-reads requer a conexão Lettuce");
+        }
+        return new ReplicaReadConnection(primary, ReadFrom.valueOf(readFrom));
     }
 
     @Bean
@@ -30,4 +57,71 @@ public class RedisConfig {
         template.afterPropertiesSet();
         return template;
     }
+
+    /**
+     * Template com valores em bytes crus, usado pelo armazenamento de sessões (serializadas pelo {@link SessionCodec}).
+     * Define também o layout das chaves ({@code session.keys.hash-tags}), obrigatório com hash tags no Redis
+     * Cluster para que as chaves de uma sessão fiquem no mesmo slot.
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> sessionRedisTemplate(RedisConnectionFactory connectionFactory,
+                                                              @Value("${session.keys.hash-tags:false}") boolean hashTags) {
+        if (!hashTags && connectionFactory instanceof LettuceConnectionFactory lettuce && lettuce.isClusterAware()) {
+            throw new IllegalStateException("Redis Cluster requer session.keys.hash-tags=true");
+        }
+        SessionKeys.useHashTags(hashTags);
+        return sessionTemplate(connectionFactory);
+    }
+
+    /**
+     * Template das leituras que toleram atraso de replicação (exportação, registros de sessões concluídas,
+     * relatório de respostas). Sem {@code session.redis.replica-reads} usa a conexão principal.
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> sessionReadTemplate(RedisConnectionFactory connectionFactory,
+                                                             ObjectProvider<ReplicaReadConnection> replicaReads,
+                                                             @Qualifier("sessionRedisTemplate") RedisTemplate<String, byte[]> sessionRedisTemplate) {
+        ReplicaReadConnection replica = replicaReads.getIfAvailable();
+        return replica == null ? sessionRedisTemplate : sessionTemplate(replica.getConnectionFactory());
+    }
+
+    private static RedisTemplate<String, byte[]> sessionTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(new StringRedisSerializer());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    @Bean
+    public SessionSymbolTable sessionSymbolTable(ObjectProvider<QuestionnaireService> questionnaireService,
+                                                 @Qualifier("sessionRedisTemplate") RedisTemplate<String, byte[]> sessionRedisTemplate) {
+        return new SessionSymbolTable(questionnaireService, sessionRedisTemplate);
+    }
+
+    /**
+     * Codec de gravação das sessões: "json" (formato original) ou "binary" (compacto).
+     * Ambos leem valores gravados no outro formato, permitindo migrar nos dois sentidos.
+     */
+    @Bean
+    public SessionCodec sessionCodec(@Value("${session.codec:json}") String codec, SessionSymbolTable symbolTable) {
+        BinarySessionCodec binary = new BinarySessionCodec(symbolTable);
+        return "binary".equals(codec) ? binary : new JsonSessionCodec(binary);
+    }
+
+    /**
+     * Assina os avisos de alteração de sessão publicados pelos outros nós (apenas com o near cache ativo).
+     */
+    @Bean
+    @ConditionalOnProperty(name = "session.near-cache.enabled", havingValue = "true")
+    public RedisMessageListenerContainer sessionInvalidationListener(RedisConnectionFactory connectionFactory,
+                                                                     SessionInvalidation invalidation) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(invalidation, new ChannelTopic(SessionInvalidation.CHANNEL));
+        return container;
+    }
 }
@@ -0,0 +1,48 @@
+package com.example.question.config;
+
+import io.lettuce.core.ReadFrom;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+
+/**
+ * Segunda conexão Lettuce, para os mesmos servidores da conexão principal, com leituras direcionadas
+ * pelo {@link ReadFrom} informado. Copia da principal o modo (standalone com descoberta das réplicas,
+ * sentinel ou cluster), credenciais, SSL, timeouts e ClientResources.
+ */
+public class ReplicaReadConnection implements DisposableBean {
+
+    private final LettuceConnectionFactory connectionFactory;
+
+    public ReplicaReadConnection(LettuceConnectionFactory primary, ReadFrom readFrom) {
+        LettuceClientConfiguration base = primary.getClientConfiguration();
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder()
+                .readFrom(readFrom)
+                .commandTimeout(base.getCommandTimeout())
+                .shutdownTimeout(base.getShutdownTimeout());
+        base.getClientResources().ifPresent(builder::clientResources);
+        base.getClientOptions().ifPresent(builder::clientOptions);
+        base.getClientName().ifPresent(builder::clientName);
+        if (base.isUseSsl()) {
+            LettuceClientConfiguration.LettuceSslClientConfigurationBuilder ssl = builder.useSsl();
+            ssl.verifyPeer(base.getVerifyMode());
+            if (base.isStartTls()) ssl.startTls();
+        }
+        RedisConfiguration servers = primary.isClusterAware() ? primary.getClusterConfiguration()
+                : primary.isRedisSentinelAware() ? primary.getSentinelConfiguration()
+                : primary.getStandaloneConfiguration();
+        this.connectionFactory = new LettuceConnectionFactory(servers, builder.build());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+    }
+
+    public LettuceConnectionFactory getConnectionFactory() {
+        return connectionFactory;
+    }
+
+    @Override
+    public void destroy() {
+        connectionFactory.destroy();
+    }
+}
@@ -1,23 +1,129 @@
 package com.example.question.controller;
 
-import com.example.question.model.Answer;
+import com.example.question.model.CompletedSession;
+import com.example.question.model.NextStepRequest;
+import com.example.question.model.NextStepRequest.IncomingAnswer;
+import com.example.question.model.NextStepResponse;
 import com.example.question.model.Question;
+import com.example.question.model.SessionState;
+import com.example.question.service.AnswerAnalytics;
+import com.example.question.service.BranchCursor;
+import com.example.question.service.CompiledQuestionnaire;
+import com.example.question.service.QuestionJsonCache;
 import com.example.question.service.QuestionnaireService;
+import com.example.question.service.SessionAnswers;
+import com.example.question.service.StepMetrics;
+import com.example.question.service.StepMetrics.Phase;
+import com.example.question.session.SessionChanges;
+import com.example.question.session.SessionKeys;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 public class QuestionController {
 
     private static final Logger log = LoggerFactory.getLogger(QuestionController.class);
 
+    // tentativas de um passo quando outra requisição grava a mesma sessão entre a leitura e a gravação
+    private static final int MAX_ATTEMPTS = 3;
+
+    // versão da sessão após o passo (protocolo delta: enviada de volta como sessionVersion)
+    static final String SESSION_VERSION = "Session-Version";
+
+    // resultado interno de um passo cuja gravação perdeu a corrida para outra requisição
+    private static final Object CONFLICT = new Object();
+
+    // newline-delimited JSON: um passo (entrada) ou resultado (saída) por linha na sincronização em lote
+    private static final String NDJSON = "application/x-ndjson";
+    private static final byte[] BULK_SESSION_ID = "{\"sessionId\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BULK_LINE_END = "}\n".getBytes(StandardCharsets.US_ASCII);
+
     @Autowired
     private QuestionnaireService questionnaireService;
 
+    @Autowired
+    private QuestionJsonCache questionJsonCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private StepMetrics metrics;
+
+    @Autowired
+    private AnswerAnalytics analytics;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${bulk.batch-size:256}")
+    private int bulkBatchSize;
+
+    // 0 = um worker por núcleo (com virtual threads: sem limite além do tamanho do bloco)
+    @Value("${bulk.parallelism:0}")
+    private int bulkParallelism;
+
+    private AsyncTaskExecutor bulkExecutor;
+
+    /**
+     * Workers da sincronização em lote. Com {@code spring.threads.virtual.enabled=true} (Java 21+) cada
+     * sessão do bloco roda em uma virtual thread, como os próprios requests: a espera pelo Redis não
+     * ocupa uma thread de plataforma. Caso contrário, um pool fixo de threads de plataforma.
+     */
+    @PostConstruct
+    void startBulkExecutor() {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor virtual = new SimpleAsyncTaskExecutor("bulk-");
+            virtual.setVirtualThreads(true);
+            if (bulkParallelism > 0) virtual.setConcurrencyLimit(bulkParallelism);
+            bulkExecutor = virtual;
+        } else {
+            int workers = bulkParallelism > 0 ? bulkParallelism : Runtime.getRuntime().availableProcessors();
+            ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+            pool.setCorePoolSize(workers);
+            pool.setMaxPoolSize(workers);
+            pool.setThreadNamePrefix("bulk-");
+            pool.initialize();
+            bulkExecutor = pool;
+        }
+    }
+
+    @PreDestroy
+    void stopBulkExecutor() {
+        if (bulkExecutor instanceof ThreadPoolTaskExecutor pool) pool.shutdown();
+        else if (bulkExecutor instanceof SimpleAsyncTaskExecutor virtual) virtual.close();
+    }
+
     /**
      * Endpoint principal que recebe o progresso do questionário, salva o progresso no cache,
      * calcula o próximo passo e retorna a próxima pergunta (ou fim) — e o resumo apenas
@@ -25,223 +131,549 @@ public class QuestionController {
      *
      * Suporta dois formatos de entrada no corpo do request: `answers` (recomendado) e
      * `comboQuestions` (compatibilidade legada). Ambos serão normalizados internamente.
+     *
+     * A gravação é condicionada à versão lida da sessão: se outra requisição gravou a mesma sessão
+     * nesse intervalo, o passo é refeito sobre o estado novo; persistindo o conflito, responde 409.
+     *
+     * A pergunta volta sempre com corpo e com o ETag da versão renderizada; a revalidação
+     * (If-None-Match → 304) é feita por {@code GET /question/{questionnaireId}/{code}}.
      */
     @PostMapping("/question_next_step")
-    public Object nextStep(@RequestBody Map<String, Object> request) {
-        String sessionId = request.getOrDefault("sessionId", "defaultSession").toString();
-        Map<String, Object> questionnaireMap = (Map<String, Object>) request.get("questionnaire");
+    public Object nextStep(@RequestBody NextStepRequest request) {
+        return run(request, null);
+    }
 
-        // 1) Normaliza entradas (answers ou comboQuestions) para formato padrão
-        List<Map<String, Object>> incomingAnswers = normalizeIncomingAnswers(questionnaireMap);
+    /**
+     * Pergunta pré-renderizada de uma versão do questionário, para clientes que guardam as perguntas:
+     * com If-None-Match igual ao ETag recebido no passo, responde 304 sem corpo.
+     */
+    @GetMapping("/question/{questionnaireId}/{code}")
+    public ResponseEntity<?> question(@PathVariable String questionnaireId, @PathVariable String code,
+                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        CompiledQuestionnaire questionnaire = questionnaireService.snapshot(questionnaireId);
+        int id = questionnaire == null ? CompiledQuestionnaire.NONE : questionnaire.idOf(code);
+        if (id == CompiledQuestionnaire.NONE) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "Pergunta não encontrada", "questionnaireId", questionnaireId, "code", code));
+        }
+        QuestionJsonCache.Rendered rendered = questionJsonCache.nextQuestion(questionnaire, id);
+        if (ifNoneMatch != null && matchesEtag(ifNoneMatch, rendered.etag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(rendered.etag()).build();
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(rendered.etag()).body(rendered.json());
+    }
 
-        // 2) Se o request contém respostas novas (incoming), primeiro detectamos se alguma edição altera o fluxo
-        if (incomingAnswers != null && !incomingAnswers.isEmpty()) {
-            // Build quick maps trimmed
-            java.util.Map<String, Object> incomingMap = new java.util.LinkedHashMap<>();
-            for (Map<String, Object> a : incomingAnswers) {
-                Object qc = a.get("questionCode");
-                if (qc != null) incomingMap.put(String.valueOf(qc).trim(), a.get("value"));
+    /**
+     * Sincronização em lote (tablets offline): recebe vários passos {sessionId, questionnaire} em NDJSON
+     * (um por linha; um array JSON também é aceito) e responde, também em NDJSON, um resultado
+     * {sessionId, status, body} por passo, na ordem recebida, à medida que cada bloco é concluído.
+     *
+     * A entrada é lida de forma incremental em blocos de {@code bulk.batch-size} passos. Cada bloco lê o
+     * estado de todas as suas sessões em uma única ida ao Redis e processa as sessões em paralelo
+     * ({@code bulk.parallelism}); passos da mesma sessão são aplicados em ordem. Cada passo segue as
+     * mesmas regras de /question_next_step, inclusive a gravação condicionada à versão.
+     *
+     * Como o status 200 já foi enviado com as primeiras linhas, falhas nunca viram exceção: um passo que
+     * falha tem sua linha com status 500 e os demais seguem; se a sincronização for interrompida, uma
+     * linha final sem sessionId (status 503) encerra a resposta.
+     */
+    @PostMapping(value = "/question_next_step/bulk", consumes = {NDJSON, MediaType.APPLICATION_JSON_VALUE})
+    public void nextStepBulk(HttpServletRequest httpRequest, HttpServletResponse httpResponse) throws IOException {
+        httpResponse.setContentType(NDJSON);
+        OutputStream out = httpResponse.getOutputStream();
+        List<NextStepRequest> batch = new ArrayList<>(bulkBatchSize);
+        try (MappingIterator<NextStepRequest> entries = objectMapper.readerFor(NextStepRequest.class).readValues(httpRequest.getInputStream())) {
+            while (entries.hasNextValue()) {
+                batch.add(entries.nextValue());
+                if (batch.size() == bulkBatchSize) {
+                    writeBulk(out, batch, runBulk(batch));
+                    batch.clear();
+                    if (bulkInterrupted(out)) return;
+                }
             }
+        } catch (JsonProcessingException e) {
+            // linha inválida: os passos anteriores já foram aplicados, os seguintes não são lidos
+            writeBulk(out, batch, runBulk(batch));
+            writeLine(out, null, HttpStatus.BAD_REQUEST.value(), Map.of("message", "Entrada inválida: " + e.getOriginalMessage()));
+            return;
+        }
+        writeBulk(out, batch, runBulk(batch));
+        bulkInterrupted(out);
+    }
 
-            // make lastIncoming / lastQ / lastVal available for later use
-            Map<String, Object> lastIncoming = incomingAnswers.get(incomingAnswers.size() - 1);
-            String lastQ = lastIncoming.get("questionCode") == null ? null : String.valueOf(lastIncoming.get("questionCode")).trim();
-            Object lastVal = lastIncoming.get("value");
-
-            // Recupera saved answers
-            List<Map<String, Object>> savedAnswers = questionnaireService.getSavedAnswers(sessionId);
-            java.util.Map<String, Object> savedMap = new java.util.LinkedHashMap<>();
-            if (savedAnswers != null) {
-                for (Map<String, Object> a : savedAnswers) {
-                    Object qc = a.get("questionCode");
-                    if (qc != null) savedMap.put(String.valueOf(qc).trim(), a.get("value"));
-                }
+    private boolean bulkInterrupted(OutputStream out) throws IOException {
+        if (!Thread.currentThread().isInterrupted()) return false;
+        writeLine(out, null, HttpStatus.SERVICE_UNAVAILABLE.value(), Map.of("message", "Sincronização em lote interrompida"));
+        out.flush();
+        return true;
+    }
+
+    /**
+     * Executa um bloco: leitura agrupada das sessões e um worker por sessão (passos da sessão em ordem).
+     * Nunca lança: passos sem resultado (worker recusado, falho ou interrompido) voltam como 500; na
+     * interrupção, o flag da thread fica marcado para o chamador encerrar a resposta.
+     */
+    private Object[] runBulk(List<NextStepRequest> batch) {
+        Object[] results = new Object[batch.size()];
+        if (batch.isEmpty()) return results;
+        Map<String, List<Integer>> bySession = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            bySession.computeIfAbsent(batch.get(i).sessionId(), k -> new ArrayList<>()).add(i);
+        }
+        // ids inválidos são recusados no passo, sem leitura antecipada
+        List<String> readable = new ArrayList<>(bySession.size());
+        for (String id : bySession.keySet()) if (SessionKeys.isValidId(id)) readable.add(id);
+        Map<String, SessionState> read;
+        try {
+            read = questionnaireService.getSavedSessions(readable);
+        } catch (RuntimeException e) {
+            // sem a leitura em lote cada passo lê a própria sessão (e falha sozinho, se for o caso)
+            log.warn("falha na leitura em lote de {} sessões", readable.size(), e);
+            read = null;
+        }
+        Map<String, SessionState> prefetched = read;
+        List<Future<?>> pending = new ArrayList<>(bySession.size());
+        try {
+            for (List<Integer> indexes : bySession.values()) {
+                pending.add(bulkExecutor.submit(() -> {
+                    for (int k = 0; k < indexes.size(); k++) {
+                        int i = indexes.get(k);
+                        // apenas o primeiro passo da sessão usa o estado lido em lote
+                        results[i] = runGuarded(batch.get(i), k == 0 ? prefetched : null);
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException e) {
+            log.warn("sincronização em lote recusada pelo executor", e);
+        }
+        for (Future<?> f : pending) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<?> p : pending) p.cancel(true);
+                break;
+            } catch (ExecutionException e) {
+                log.warn("falha em um worker da sincronização em lote", e.getCause());
             }
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) results[i] = stepFailed();
+        }
+        return results;
+    }
 
-            // Detect earliest edited question where value changed
-            String changedCode = null;
-            Object oldVal = null;
-            Object newVal = null;
+    /**
+     * Um passo do lote; falhas inesperadas viram um resultado 500 daquele passo sem interromper os demais.
+     */
+    private Object runGuarded(NextStepRequest request, Map<String, SessionState> prefetched) {
+        try {
+            return run(request, prefetched);
+        } catch (RuntimeException e) {
+            log.warn("falha no passo em lote da sessão {}", request.sessionId(), e);
+            return stepFailed();
+        }
+    }
+
+    private static ResponseEntity<Map<String, String>> stepFailed() {
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Map.of("message", "Erro ao processar o passo"));
+    }
+
+    private void writeBulk(OutputStream out, List<NextStepRequest> batch, Object[] results) throws IOException {
+        for (int i = 0; i < results.length; i++) {
+            Object result = results[i];
+            if (result instanceof ResponseEntity<?> entity) {
+                writeLine(out, batch.get(i).sessionId(), entity.getStatusCode().value(), entity.getBody());
+            } else {
+                writeLine(out, batch.get(i).sessionId(), HttpStatus.OK.value(), result);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Uma linha {"sessionId":..., "status":..., "body":...}; corpos pré-renderizados são copiados sem reserializar.
+     */
+    private void writeLine(OutputStream out, String sessionId, int status, Object body) throws IOException {
+        out.write(BULK_SESSION_ID);
+        out.write(objectMapper.writeValueAsBytes(sessionId));
+        out.write((",\"status\":" + status + ",\"body\":").getBytes(StandardCharsets.US_ASCII));
+        out.write(body instanceof byte[] json ? json : objectMapper.writeValueAsBytes(body));
+        out.write(BULK_LINE_END);
+    }
+
+    /**
+     * Passo com as tentativas em caso de conflito de versão. `prefetched`, quando informado, tem o estado
+     * já lido da sessão (usado apenas na primeira tentativa).
+     */
+    private Object run(NextStepRequest request, Map<String, SessionState> prefetched) {
+        String sessionId = request.sessionId();
+        if (!SessionKeys.isValidId(sessionId)) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("message", "sessionId inválido: não pode conter ':', '{' ou '}'", "sessionId", sessionId));
+        }
+        // com o questionário informado no payload, respostas inválidas são rejeitadas antes de qualquer acesso ao Redis
+        if (request.questionnaireId() != null) {
+            CompiledQuestionnaire requested = questionnaireService.snapshot(request.questionnaireId());
+            ResponseEntity<?> rejected = requested == null ? null : rejectInvalid(requested, request.incomingAnswers());
+            if (rejected != null) return rejected;
+        }
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Object response = step(sessionId, request, attempt == 1 ? prefetched : null);
+            if (response != CONFLICT) return response;
+            log.debug("conflito de versão na sessão {} (tentativa {})", sessionId, attempt);
+        }
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("message", "Sessão alterada por outra requisição", "sessionId", sessionId));
+    }
+
+    /**
+     * Executa um passo completo (leitura, cálculo e gravação). Retorna {@link #CONFLICT} quando a
+     * gravação é rejeitada por mudança de versão.
+     */
+    private Object step(String sessionId, NextStepRequest request, Map<String, SessionState> prefetched) {
+        // 1) Respostas recebidas (answers ou comboQuestions), já com os códigos normalizados
+        long t = metrics.start();
+        List<IncomingAnswer> incomingAnswers = request.incomingAnswers();
+        boolean hasIncoming = !incomingAnswers.isEmpty();
+        metrics.record(Phase.NORMALIZE, t);
+
+        // Recupera o estado salvo uma única vez: além das respostas, indica a qual questionário a sessão pertence.
+        // Com respostas novas basta ler as perguntas recebidas (suficiente para detectar edições).
+        t = metrics.start();
+        SessionState savedSession;
+        if (prefetched != null && prefetched.containsKey(sessionId)) {
+            savedSession = prefetched.get(sessionId);
+        } else {
+            savedSession = hasIncoming
+                    ? questionnaireService.getSavedSession(sessionId, incomingCodes(incomingAnswers))
+                    : questionnaireService.getSavedSession(sessionId);
+        }
+        // sessão já concluída e compactada: as respostas do ramo voltam a ser o estado salvo
+        boolean restored = false;
+        if (savedSession == null) {
+            CompletedSession completed = questionnaireService.getCompletedSession(sessionId);
+            if (completed != null && completed.getAnswers() != null) {
+                savedSession = new SessionState(completed.getQuestionnaireId(), completed.getAnswers());
+                restored = true;
+            }
+        }
+        metrics.record(Phase.LOAD, t);
+        String requestedId = request.questionnaireId();
+
+        // snapshot único do questionário para todo o request (imune a reloads concorrentes)
+        CompiledQuestionnaire questionnaire = resolveQuestionnaire(requestedId, savedSession);
+        if (questionnaire == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "Questionário não encontrado", "questionnaireId", requestedId));
+        }
+        // sem id no payload o questionário só é conhecido depois da leitura: valida antes de qualquer gravação
+        if (requestedId == null) {
+            ResponseEntity<?> rejected = rejectInvalid(questionnaire, incomingAnswers);
+            if (rejected != null) return rejected;
+        }
+        // protocolo delta: as respostas recebidas são relativas à versão informada pelo cliente; com outra
+        // versão gravada o cliente precisa ressincronizar (a sessão restaurada de um registro compacto não tem versão viva)
+        long version = savedSession == null || restored ? 0 : savedSession.getVersion();
+        if (request.sessionVersion() != null && !restored && request.sessionVersion() != version) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("message", "Versão da sessão desatualizada");
+            body.put("sessionId", sessionId);
+            body.put("sessionVersion", version);
+            return ResponseEntity.status(HttpStatus.CONFLICT).header(SESSION_VERSION, Long.toString(version)).body(body);
+        }
+        String questionnaireId = questionnaire.getQuestionnaireId();
+        // respostas salvas para outro questionário não se aplicam a este
+        boolean otherQuestionnaire = savedSession != null && savedSession.getQuestionnaireId() != null
+                && !savedSession.getQuestionnaireId().equals(questionnaireId);
+        boolean savedComplete = savedSession == null || otherQuestionnaire || savedSession.isComplete();
+        // respostas indexadas pelos ids do questionário; recebem a poda e as respostas novas ao longo do passo
+        SessionAnswers answers = SessionAnswers.of(questionnaire,
+                savedSession == null || otherQuestionnaire ? null : savedSession.getAnswers());
+        SessionChanges changes = new SessionChanges().expectVersion(version)
+                .mergedComplete(savedComplete);
+        if (otherQuestionnaire) changes.markReplace();
+        // sessão inexistente ou sem o questionário registrado precisa ser gravada mesmo sem mudanças
+        boolean mustWrite = savedSession == null || !questionnaireId.equals(savedSession.getQuestionnaireId());
+        // ramo ativo persistido; com o estado completo ele é restaurado (ou recalculado) e atualizado no passo
+        SessionState pathSource = otherQuestionnaire ? null : savedSession;
+        List<String> savedPath = pathSource == null || pathSource.getPathStructure() != questionnaire.structureHash()
+                ? null : pathSource.getPath();
+        t = metrics.start();
+        BranchCursor cursor = savedComplete ? savedBranch(questionnaire, pathSource, answers) : null;
+        metrics.record(Phase.BRANCH, t);
+
+        // 2) Se o request contém respostas novas (incoming), primeiro detectamos se alguma edição altera o fluxo
+        if (hasIncoming) {
+            IncomingAnswer lastIncoming = incomingAnswers.get(incomingAnswers.size() - 1);
+
+            // Apenas respostas novas ou alteradas seguem adiante: clientes que reenviam a lista inteira a cada
+            // passo custam uma comparação por item, e a detecção de fluxo, a poda e o merge crescem com o delta
+            t = metrics.start();
+            List<IncomingAnswer> delta = changedAnswers(answers, incomingAnswers);
+            boolean flowChanged = false;
             String prevChild = null;
             String newChild = null;
 
-            for (Map<String, Object> inc : incomingAnswers) {
-                Object qcObj = inc.get("questionCode");
-                if (qcObj == null) continue;
-                String qc = String.valueOf(qcObj).trim();
-                Object incVal = inc.get("value");
-                Object savedVal = savedMap.get(qc);
+            // Detect earliest edited question where value changed
+            for (IncomingAnswer inc : delta) {
+                int id = questionnaire.idOf(inc.questionCode());
+                // perguntas fora do questionário não têm filhos: editá-las nunca muda o fluxo
+                Object savedVal = answers.get(id);
                 // if savedVal exists and is different -> potential edit
-                if (savedVal != null && !String.valueOf(savedVal).equals(String.valueOf(incVal))) {
+                if (savedVal != null && !String.valueOf(savedVal).equals(String.valueOf(inc.value()))) {
                     // determine children for saved vs incoming
-                    prevChild = questionnaireService.getNextQuestionCodeForAnswer(qc, savedVal);
-                    newChild = questionnaireService.getNextQuestionCodeForAnswer(qc, incVal);
-                    if ((prevChild == null && newChild == null) || (prevChild != null && prevChild.equals(newChild))) {
+                    prevChild = questionnaire.nextCode(id, String.valueOf(savedVal));
+                    newChild = questionnaire.nextCode(id, inc.value() == null ? null : String.valueOf(inc.value()));
+                    if (java.util.Objects.equals(prevChild, newChild)) {
                         // changed value but did not change branch, continue searching
                         continue;
                     }
                     // this edit changes the flow
-                    changedCode = qc;
-                    oldVal = savedVal;
-                    newVal = incVal;
+                    flowChanged = true;
                     break;
                 }
             }
+            metrics.record(Phase.FLOW_DETECTION, t);
 
-            if (changedCode != null) {
-                // Flow changed: need to prune downstream answers from savedMap
-                if (prevChild != null) {
-                    java.util.Set<String> subtree = questionnaireService.collectSubtreeCodes(prevChild);
-                    for (String rm : subtree) {
-                        savedMap.remove(rm);
-                    }
+            if (flowChanged) {
+                // Flow changed: need to prune downstream answers
+                t = metrics.start();
+                List<String> pruned = answers.clearSubtree(questionnaire.idOf(prevChild));
+                // estado parcial: não sabemos quais respostas da subtree existem, então removemos a subtree inteira
+                changes.remove(savedComplete ? pruned : questionnaireService.collectSubtreeCodes(questionnaire, prevChild));
+                metrics.record(Phase.PRUNE, t);
+                // apenas respostas presentes no estado lido: as remoções preventivas da leitura parcial não contam
+                metrics.flowChanged(pruned.size());
+            }
+
+            // Merge: incoming overwrites; reenvio da mesma resposta não gera escrita
+            t = metrics.start();
+            // valor anterior de cada resposta do delta, para as estatísticas (contadas só depois da gravação)
+            Object[] previous = new Object[delta.size()];
+            for (int i = 0; i < delta.size(); i++) {
+                IncomingAnswer inc = delta.get(i);
+                previous[i] = answers.get(inc.questionCode());
+                if (answers.put(inc.questionCode(), inc.value())) changes.put(inc.questionCode(), inc.value());
+            }
+            metrics.record(Phase.MERGE, t);
+
+            // ramo: atualizado a partir da primeira decisão afetada (estado completo) ou mantido apenas
+            // quando o passo comprovadamente não o altera (estado parcial)
+            t = metrics.start();
+            if (cursor != null) {
+                cursor.update(answers, answers.changedIds());
+                changes.path(cursor.codes(), questionnaire.structureHash(), !cursor.sameAs(savedPath));
+            } else if (savedPath != null) {
+                if (!flowChanged && (delta.isEmpty() || pathUnchanged(questionnaire, savedPath, delta, savedSession))) {
+                    changes.path(savedPath, questionnaire.structureHash(), false);
+                } else {
+                    changes.path(null, 0, true);
                 }
-                // Merge savedMap (pruned) with incoming (incoming overwrites)
-                java.util.Map<String, Object> mergedByQuestion = new java.util.LinkedHashMap<>();
-                // keep saved (pruned) first
-                for (java.util.Map.Entry<String, Object> e : savedMap.entrySet()) mergedByQuestion.put(e.getKey(), e.getValue());
-                // then incoming overwrites
-                for (java.util.Map.Entry<String, Object> e : incomingMap.entrySet()) mergedByQuestion.put(e.getKey(), e.getValue());
-
-                List<Map<String, Object>> mergedList = mapToList(mergedByQuestion);
-                String questionnaireId = questionnaireMap == null ? questionnaireService.getQuestionnaire().getQuestionnaireId() : String.valueOf(questionnaireMap.getOrDefault("questionnaireId", questionnaireService.getQuestionnaire().getQuestionnaireId()));
-                // save pruned+merged progress
-                questionnaireService.saveAnswersList(sessionId, questionnaireId, mergedList);
-
-                // Decide next based on newChild
-                if (newChild == null) {
-                    // final now => return summary
-                    List<Question> branch = questionnaireService.getAnsweredBranch(mergedList);
-                    List<Map<String, Object>> summary = questionnaireService.buildAnsweredSummary(mergedList, branch);
-                    return Map.of("message", "Fim do questionário", "summary", summary);
+            }
+            metrics.record(Phase.BRANCH, t);
+
+            // save pruned+merged progress (apenas quando algo mudou)
+            boolean written = mustWrite || !changes.isEmpty();
+            if (written) {
+                List<Map<String, Object>> merged = answers.toList();
+                // sessão restaurada de um registro compacto: o estado vivo precisa ser recriado por inteiro
+                if (restored) {
+                    changes = SessionChanges.replaceAll(merged).expectVersion(0)
+                            .path(changes.getPath(), changes.getPathStructure(), changes.getPath() != null);
                 }
-                Question next = questionnaireService.findQuestionByCode(newChild);
-                if (next == null) {
-                    List<Question> branch = questionnaireService.getAnsweredBranch(mergedList);
-                    List<Map<String, Object>> summary = questionnaireService.buildAnsweredSummary(mergedList, branch);
-                    return Map.of("message", "Fim do questionário", "summary", summary);
+                if (!questionnaireService.saveSession(sessionId, questionnaireId, merged, changes)) return CONFLICT;
+                version = changes.getExpectedVersion() + 1;
+            }
+            if (!restored) {
+                for (int i = 0; i < delta.size(); i++) {
+                    analytics.answered(questionnaire, questionnaire.idOf(delta.get(i).questionCode()), previous[i], delta.get(i).value());
                 }
-                return Map.of("questionnaireId", questionnaireId, "questions", List.of(next));
             }
 
-            // No flow change detected: fall through to normal behavior (merge saved+incoming, save, use last incoming to decide next)
-            java.util.Map<String, Object> mergedByQuestion = mergeSavedAndIncoming(savedAnswers, incomingAnswers);
-            List<Map<String, Object>> mergedList = mapToList(mergedByQuestion);
-            String questionnaireId = questionnaireMap == null ? questionnaireService.getQuestionnaire().getQuestionnaireId() : String.valueOf(questionnaireMap.getOrDefault("questionnaireId", questionnaireService.getQuestionnaire().getQuestionnaireId()));
-            questionnaireService.saveAnswersList(sessionId, questionnaireId, mergedList);
-
-            // decide next based on last incoming
-            String nextFromIncoming = questionnaireService.getNextQuestionCodeForAnswer(lastQ, lastVal);
-            if (nextFromIncoming == null) {
-                List<Question> branch = questionnaireService.getAnsweredBranch(mergedList);
-                List<Map<String, Object>> summary = questionnaireService.buildAnsweredSummary(mergedList, branch);
-                return Map.of("message", "Fim do questionário", "summary", summary);
-            }
-            Question next = questionnaireService.findQuestionByCode(nextFromIncoming);
+            // Decide next: on flow change based on newChild, otherwise on the last incoming answer
+            String nextCode = flowChanged ? newChild
+                    : questionnaireService.getNextQuestionCodeForAnswer(questionnaire, lastIncoming.questionCode(), lastIncoming.value());
+            Question next = nextCode == null ? null : questionnaireService.findQuestionByCode(questionnaire, nextCode);
             if (next == null) {
-                List<Question> branch = questionnaireService.getAnsweredBranch(mergedList);
-                List<Map<String, Object>> summary = questionnaireService.buildAnsweredSummary(mergedList, branch);
-                return Map.of("message", "Fim do questionário", "summary", summary);
+                // final now => return summary (requires every saved answer)
+                SessionAnswers all = answers;
+                BranchCursor finalCursor = cursor;
+                long completedVersion = version;
+                if (!savedComplete) {
+                    SessionState full = questionnaireService.getSavedSession(sessionId);
+                    all = SessionAnswers.of(questionnaire, full == null ? null : full.getAnswers());
+                    finalCursor = savedBranch(questionnaire, full, all);
+                    completedVersion = full == null ? 0 : full.getVersion();
+                }
+                List<Question> branch = finalCursor.questions();
+                if (!restored || !changes.isEmpty()) {
+                    // o registro só substitui a versão da qual foi montado
+                    if (!questionnaireService.completeSession(sessionId, completedVersion, questionnaireId, all, branch)) return CONFLICT;
+                    analytics.completed(questionnaire);
+                }
+                return NextStepResponse.end(questionnaireService.buildSummary(all, branch));
             }
-            return Map.of("questionnaireId", questionnaireId, "questions", List.of(next));
+            // funil: a pergunta alcançada por uma resposta nova ou alterada (gravada) e ainda sem resposta conta
+            // como apresentada; reenvios das mesmas respostas não gravam nada e não contam de novo
+            int nextId = questionnaire.idOf(next.getCode());
+            if (!restored && written && !delta.isEmpty() && !answers.has(nextId)) analytics.presented(questionnaire, nextId);
+            return questionResponse(questionnaire, next, version);
         }
 
-        // 3) Se não houver respostas novas no request, recupera e usa o progresso salvo
-        List<Map<String, Object>> saved = questionnaireService.getSavedAnswers(sessionId);
-        java.util.Map<String, Object> mergedByQuestion = mergeSavedAndIncoming(saved, null);
-        List<Map<String, Object>> mergedList = mapToList(mergedByQuestion);
-        String questionnaireId = questionnaireMap == null ? questionnaireService.getQuestionnaire().getQuestionnaireId() : String.valueOf(questionnaireMap.getOrDefault("questionnaireId", questionnaireService.getQuestionnaire().getQuestionnaireId()));
-        // garante que o estado salvo exista
-        questionnaireService.saveAnswersList(sessionId, questionnaireId, mergedList);
+        // 3) Se não houver respostas novas no request, usa o progresso salvo
+        // A próxima pergunta sai da última do ramo persistido, sem refazer o caminho desde o root
+        Question nextQuestion;
+        if (answers.isEmpty()) {
+            // If there are no saved answers, treat as start/reset and return first question
+            nextQuestion = questionnaire.question(questionnaire.rootId());
+        } else {
+            int lastId = cursor.last();
+            String nextQuestionCode = lastId == CompiledQuestionnaire.NONE ? null : questionnaire.nextCode(lastId, answers.valueString(lastId));
+            nextQuestion = nextQuestionCode == null ? null : questionnaireService.findQuestionByCode(questionnaire, nextQuestionCode);
+            if (nextQuestion == null) {
+                // sessões concluídas antes da compactação existir são compactadas na primeira leitura
+                List<Question> branch = cursor.questions();
+                if (!restored) {
+                    if (!questionnaireService.completeSession(sessionId, version, questionnaireId, answers, branch)) return CONFLICT;
+                    analytics.completed(questionnaire);
+                }
+                return NextStepResponse.end(questionnaireService.buildSummary(answers, branch));
+            }
+        }
 
-        // If there are no saved answers (mergedList empty), treat as start/reset and return first question
-        if (mergedList == null || mergedList.isEmpty()) {
-            Question first = questionnaireService.getQuestionnaire().getQuestions().get(0);
-            return Map.of("questionnaireId", questionnaireId, "questions", List.of(first));
+        // garante que o estado salvo exista; um ramo ausente ou desatualizado é regravado junto
+        if (!restored) changes.path(cursor.codes(), questionnaire.structureHash(), !cursor.sameAs(savedPath));
+        boolean written = mustWrite || !changes.isEmpty();
+        if (written) {
+            if (!questionnaireService.saveSession(sessionId, questionnaireId, answers.toList(), changes)) return CONFLICT;
+            version = changes.getExpectedVersion() + 1;
         }
+        // sessão nova: a pergunta inicial entra no funil
+        if (savedSession == null) analytics.presented(questionnaire, questionnaire.rootId());
+        return questionResponse(questionnaire, nextQuestion, version);
+    }
 
-        // Recalcula branch e summary a partir do progresso salvo
-        List<Question> branch = questionnaireService.getAnsweredBranch(mergedList);
-        List<Map<String, Object>> summary = questionnaireService.buildAnsweredSummary(mergedList, branch);
+    /**
+     * Ramo persistido com a sessão quando ainda vale para esta versão do questionário; caso contrário
+     * (sessão antiga, questionário alterado) recalcula a partir das respostas.
+     */
+    private static BranchCursor savedBranch(CompiledQuestionnaire questionnaire, SessionState saved, SessionAnswers answers) {
+        BranchCursor cursor = saved == null ? null : BranchCursor.restore(questionnaire, saved.getPath(), saved.getPathStructure());
+        return cursor != null ? cursor : BranchCursor.build(answers);
+    }
 
-        // Determina próxima pergunta com base no ramo completo
-        String nextQuestionCode = determineNextQuestionCode(branch, mergedByQuestion);
-        if (nextQuestionCode == null) {
-            return Map.of("message", "Fim do questionário", "summary", summary);
-        }
-        Question nextQuestion = questionnaireService.findQuestionByCode(nextQuestionCode);
-        if (nextQuestion == null) {
-            return Map.of("message", "Fim do questionário", "summary", summary);
+    /**
+     * Com leitura parcial, o ramo salvo só é mantido quando todas as respostas recebidas são de perguntas
+     * já respondidas no ramo e continuam levando ao mesmo filho (reenvios e edições sem mudança de fluxo).
+     */
+    private static boolean pathUnchanged(CompiledQuestionnaire questionnaire, List<String> path,
+                                         List<IncomingAnswer> incomingAnswers, SessionState savedSession) {
+        java.util.Set<String> inPath = new java.util.HashSet<>(path);
+        Map<String, Object> saved = new java.util.HashMap<>();
+        for (Map<String, Object> a : savedSession.getAnswers()) saved.put(String.valueOf(a.get("questionCode")), a.get("value"));
+        for (IncomingAnswer inc : incomingAnswers) {
+            if (inc.questionCode() == null) continue;
+            if (!inPath.contains(inc.questionCode()) || !saved.containsKey(inc.questionCode())) return false;
+            int id = questionnaire.idOf(inc.questionCode());
+            String before = questionnaire.nextCode(id, String.valueOf(saved.get(inc.questionCode())));
+            String after = questionnaire.nextCode(id, inc.value() == null ? null : String.valueOf(inc.value()));
+            if (!java.util.Objects.equals(before, after)) return false;
         }
+        return true;
+    }
 
-        return Map.of("questionnaireId", questionnaireId, "questions", List.of(nextQuestion));
+    /**
+     * Resolve o questionário do request: o id informado no payload tem prioridade; sem ele, usa o
+     * questionário registrado na sessão salva e, por fim, o questionário padrão.
+     * Retorna null apenas quando o id informado no payload não existe.
+     */
+    private CompiledQuestionnaire resolveQuestionnaire(String requestedId, SessionState savedSession) {
+        if (requestedId != null) return questionnaireService.snapshot(requestedId);
+        if (savedSession != null && savedSession.getQuestionnaireId() != null) {
+            CompiledQuestionnaire fromSession = questionnaireService.snapshot(savedSession.getQuestionnaireId());
+            if (fromSession != null) return fromSession;
+        }
+        return questionnaireService.snapshot();
     }
 
     /**
-     * Normaliza o bloco `questionnaire` do request para uma lista padronizada de respostas
-     * no formato: List<{ questionCode: String, value: Object }>. Aceita `answers` ou `comboQuestions`.
+     * Resposta com a próxima pergunta, a partir do JSON pré-renderizado para a versão do questionário,
+     * com o ETag para revalidações posteriores via GET. A versão da sessão após o passo vai no header
+     * {@value #SESSION_VERSION}, base para o próximo delta do cliente.
      */
-    private List<Map<String, Object>> normalizeIncomingAnswers(Map<String, Object> questionnaireMap) {
-        return questionnaireService.normalizeAnswersFromQuestionnaireMap(questionnaireMap);
+    private ResponseEntity<byte[]> questionResponse(CompiledQuestionnaire questionnaire, Question question, long version) {
+        long t = metrics.start();
+        QuestionJsonCache.Rendered rendered = questionJsonCache.nextQuestion(questionnaire, questionnaire.idOf(question.getCode()));
+        metrics.record(Phase.RENDER, t);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(rendered.etag())
+                .header(SESSION_VERSION, Long.toString(version)).body(rendered.json());
     }
 
     /**
-     * Mescla respostas salvas com as entrantes. A ordem é preservada usando um LinkedHashMap:
-     * - Primeiro são aplicadas as respostas salvas (na ordem que estavam)
-     * - Depois as entrantes sobrescrevem/appendam na ordem recebida
-     * Retorna um mapa questionCode -> value (preservando ordem de inserção)
+     * If-None-Match é uma lista de ETags separadas por vírgula; cada uma é comparada por inteiro com a
+     * ETag da pergunta (comparação fraca: o prefixo W/ é ignorado). {@code *} não é aceito, pois
+     * validaria qualquer pergunta.
      */
-    private java.util.Map<String, Object> mergeSavedAndIncoming(List<Map<String, Object>> saved, List<Map<String, Object>> incoming) {
-        java.util.Map<String, Object> merged = new java.util.LinkedHashMap<>();
-        if (saved != null) {
-            for (Map<String, Object> a : saved) {
-                Object qc = a.get("questionCode");
-                if (qc != null) merged.put(String.valueOf(qc).trim(), a.get("value"));
-            }
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals(etag)) return true;
         }
-        if (incoming != null) {
-            for (Map<String, Object> a : incoming) {
-                Object qc = a.get("questionCode");
-                if (qc != null) merged.put(String.valueOf(qc).trim(), a.get("value"));
-            }
+        return false;
+    }
+
+    /**
+     * Respostas recebidas que incluem ou alteram o estado lido (reenvios do mesmo valor ficam de fora),
+     * sem itens sem questionCode.
+     */
+    private static List<IncomingAnswer> changedAnswers(SessionAnswers answers, List<IncomingAnswer> incomingAnswers) {
+        List<IncomingAnswer> delta = null;
+        for (int i = 0; i < incomingAnswers.size(); i++) {
+            IncomingAnswer inc = incomingAnswers.get(i);
+            boolean unchanged = inc.questionCode() == null
+                    || (answers.has(inc.questionCode()) && java.util.Objects.equals(answers.get(inc.questionCode()), inc.value()));
+            if (unchanged && delta == null) delta = new ArrayList<>(incomingAnswers.subList(0, i));
+            else if (!unchanged && delta != null) delta.add(inc);
         }
-        log.debug("merged answers map={}", merged);
-        return merged;
+        // caso comum do protocolo delta: tudo o que chegou é novo
+        return delta == null ? incomingAnswers : delta;
     }
 
     /**
-     * Converte um mapa questionCode->value em uma lista padronizada [{questionCode, value}, ...]
-     * preservando a ordem de iteração do mapa.
+     * Verifica as respostas recebidas com as validações compiladas do questionário. Retorna 400 com um
+     * item {questionCode, message} por resposta rejeitada, ou null quando todas são aceitas. Respostas para
+     * códigos fora do questionário não são verificadas (não participam da navegação).
      */
-    private List<Map<String, Object>> mapToList(java.util.Map<String, Object> mergedByQuestion) {
-        java.util.List<Map<String, Object>> list = new java.util.ArrayList<>();
-        for (java.util.Map.Entry<String, Object> e : mergedByQuestion.entrySet()) {
-            java.util.Map<String, Object> m = new java.util.HashMap<>();
-            m.put("questionCode", e.getKey());
-            m.put("value", e.getValue());
-            list.add(m);
+    private ResponseEntity<?> rejectInvalid(CompiledQuestionnaire questionnaire, List<IncomingAnswer> incomingAnswers) {
+        long t = metrics.start();
+        List<Map<String, Object>> errors = null;
+        for (IncomingAnswer inc : incomingAnswers) {
+            int id = questionnaire.idOf(inc.questionCode());
+            if (id == CompiledQuestionnaire.NONE) continue;
+            String problem = questionnaire.validator(id).check(inc.value());
+            if (problem == null) continue;
+            if (errors == null) errors = new ArrayList<>();
+            errors.add(Map.of("questionCode", inc.questionCode(), "message", problem));
         }
-        return list;
+        metrics.record(Phase.VALIDATE, t);
+        if (errors == null) return null;
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("message", "Respostas inválidas");
+        body.put("questionnaireId", questionnaire.getQuestionnaireId());
+        body.put("errors", errors);
+        return ResponseEntity.badRequest().body(body);
     }
 
     /**
-     * Determina o código da próxima pergunta (child) a partir do último elemento do branch.
-     * Retorna null quando não existe próximo (fim do fluxo).
+     * Códigos das perguntas recebidas, para a leitura parcial do estado salvo.
      */
-    private String determineNextQuestionCode(List<Question> branch, java.util.Map<String, Object> mergedByQuestion) {
-        if (branch == null || branch.isEmpty()) return null;
-        Question lastAnswered = branch.get(branch.size() - 1);
-        Object lastValue = mergedByQuestion.get(lastAnswered.getCode());
-        if ("combo".equals(lastAnswered.getAnswerDataTypeDescription()) || "boolean".equals(lastAnswered.getAnswerDataTypeDescription())) {
-            if (lastValue != null) {
-                String v = String.valueOf(lastValue);
-                Answer sel = lastAnswered.getAnswers().stream().filter(a -> a.getCode().equals(v)).findFirst().orElse(null);
-                if (sel != null && sel.getChildQuestion() != null) return sel.getChildQuestion().getCode();
-            }
-            return null;
-        } else {
-            if (lastAnswered.getChildQuestion() != null) return lastAnswered.getChildQuestion().getCode();
-            return null;
+    private static List<String> incomingCodes(List<IncomingAnswer> incomingAnswers) {
+        List<String> codes = new java.util.ArrayList<>(incomingAnswers.size());
+        for (IncomingAnswer a : incomingAnswers) {
+            if (a.questionCode() != null) codes.add(a.questionCode());
         }
+        return codes;
     }
 }
@@ -0,0 +1,72 @@
+package com.example.question.controller;
+
+import com.example.question.service.AnswerAnalytics;
+import com.example.question.service.CompiledQuestionnaire;
+import com.example.question.service.QuestionnaireService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoints operacionais do questionário: estado do snapshot publicado, reload manual e estatísticas de respostas.
+ */
+@RestController
+public class QuestionnaireAdminController {
+
+    @Autowired
+    private QuestionnaireService questionnaireService;
+
+    @Autowired
+    private AnswerAnalytics analytics;
+
+    /**
+     * Retorna o questionário publicado e os contadores/tempos de carga e reload.
+     */
+    @GetMapping("/questionnaire_status")
+    public Map<String, Object> status() {
+        CompiledQuestionnaire snapshot = questionnaireService.snapshot();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("questionnaireId", snapshot.getQuestionnaireId());
+        body.put("questions", snapshot.size());
+        body.put("definition", questionnaireService.getDefinitionPath().toString());
+        body.put("load", questionnaireService.getLoadStats());
+        body.put("catalog", Map.of(
+                "directory", questionnaireService.getRegistry().getDirectory().toString(),
+                "cached", questionnaireService.getRegistry().getCache().estimatedSize(),
+                "stats", questionnaireService.getRegistry().getCache().stats().toString(),
+                "load", questionnaireService.getCatalogLoadStats()));
+        return body;
+    }
+
+    /**
+     * Força o reload do arquivo de definição (útil quando o WatchService não está disponível).
+     */
+    @PostMapping("/questionnaire_reload")
+    public ResponseEntity<Map<String, Object>> reload() {
+        boolean applied = questionnaireService.reload();
+        Map<String, Object> body = status();
+        body.put("applied", applied);
+        return applied ? ResponseEntity.ok(body) : ResponseEntity.unprocessableEntity().body(body);
+    }
+
+    /**
+     * Distribuição das respostas e funil por pergunta, a partir dos contadores agregados (sem ler sessões).
+     * Sem `questionnaireId` usa o questionário publicado.
+     */
+    @GetMapping("/answer_analytics")
+    public ResponseEntity<Map<String, Object>> answerAnalytics(@RequestParam(required = false) String questionnaireId) {
+        CompiledQuestionnaire graph = questionnaireService.snapshot(questionnaireId);
+        if (graph == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "Questionário não encontrado", "questionnaireId", questionnaireId));
+        }
+        return ResponseEntity.ok(analytics.report(graph));
+    }
+}
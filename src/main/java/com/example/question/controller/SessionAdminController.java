@@ -0,0 +1,126 @@
+package com.example.question.controller;
+
+import com.example.question.service.SessionExporter;
+import com.example.question.session.JournalSessionStore;
+import com.example.question.session.NearCachedSessionStore;
+import com.example.question.session.SessionInvalidation;
+import com.example.question.session.SessionKeys;
+import com.example.question.session.SessionStats;
+import com.example.question.session.SessionTtl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Endpoints operacionais das sessões: quantidade, memória estimada, política de expiração, near cache,
+ * histórico de eventos (modo journal) e exportação dos resumos.
+ */
+@RestController
+public class SessionAdminController {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionAdminController.class);
+
+    @Autowired
+    private SessionStats sessionStats;
+
+    @Autowired
+    private SessionTtl sessionTtl;
+
+    @Autowired
+    private ObjectProvider<NearCachedSessionStore> nearCache;
+
+    @Autowired
+    private SessionInvalidation invalidation;
+
+    @Autowired
+    private ObjectProvider<JournalSessionStore> journal;
+
+    @Autowired
+    private SessionExporter exporter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Conta sessões vivas e concluídas e estima os bytes ocupados no Redis.
+     */
+    @GetMapping("/session_stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> body = new LinkedHashMap<>(sessionStats.collect());
+        body.put("ttl", Map.of(
+                "sliding", sessionTtl.getSliding().toString(),
+                "absolute", sessionTtl.getAbsolute().toString(),
+                "completed", sessionTtl.getCompleted().toString()));
+        NearCachedSessionStore cached = nearCache.getIfAvailable();
+        if (cached != null) {
+            CacheStats stats = cached.getCache().stats();
+            Map<String, Object> near = new LinkedHashMap<>();
+            near.put("size", cached.getCache().estimatedSize());
+            near.put("hits", stats.hitCount());
+            near.put("misses", stats.missCount());
+            near.put("hitRate", stats.hitRate());
+            near.put("evictions", stats.evictionCount());
+            near.put("invalidations", invalidation.getReceived());
+            body.put("nearCache", near);
+        }
+        return body;
+    }
+
+    /**
+     * Eventos do diário da sessão (respostas, podas, ramo), do mais antigo ao mais recente.
+     * Disponível apenas com {@code session.storage=journal}.
+     */
+    @GetMapping("/session_journal")
+    public ResponseEntity<?> journal(@RequestParam String sessionId) {
+        JournalSessionStore store = journal.getIfAvailable();
+        if (store == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "Diário disponível apenas com session.storage=journal"));
+        }
+        if (!SessionKeys.isValidId(sessionId)) {
+            return ResponseEntity.badRequest().body(Map.of("message", "sessionId inválido", "sessionId", sessionId));
+        }
+        return ResponseEntity.ok(Map.of("sessionId", sessionId, "events", store.history(sessionId)));
+    }
+
+    /**
+     * Exporta o resumo de cada sessão em NDJSON ({@code format=ndjson}, uma sessão por linha) ou CSV
+     * ({@code format=csv}, uma pergunta do ramo por linha), escrito à medida que a varredura avança.
+     * {@code status} filtra as sessões: all, in_progress ou completed.
+     */
+    @GetMapping("/session_export")
+    public void export(@RequestParam(defaultValue = "ndjson") String format,
+                       @RequestParam(defaultValue = "all") String status,
+                       HttpServletResponse response) throws IOException {
+        SessionExporter.Format f = SessionExporter.Format.parse(format);
+        SessionExporter.Scope scope = SessionExporter.Scope.parse(status);
+        if (f == null || scope == null) {
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(),
+                    Map.of("message", "Parâmetros inválidos: format=ndjson|csv, status=all|in_progress|completed"));
+            return;
+        }
+        response.setContentType(f == SessionExporter.Format.CSV ? "text/csv;charset=UTF-8" : "application/x-ndjson");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"sessions." + f.extension() + "\"");
+        long start = System.nanoTime();
+        SessionExporter.Result result = exporter.export(response.getOutputStream(), f, scope);
+        log.info("session export ({}, {}): {} sessions ({} skipped) in {} ms", f, scope, result.sessions(), result.skipped(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
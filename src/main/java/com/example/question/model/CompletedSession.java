@@ -0,0 +1,25 @@
+package com.example.question.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registro compacto de uma sessão que chegou ao fim do questionário: apenas as respostas do ramo
+ * percorrido. O resumo (com as perguntas) é reconstruído a partir do grafo quando necessário.
+ */
+@Data
+@NoArgsConstructor
+public class CompletedSession {
+    private String questionnaireId;
+    private long completedAt;                       // epoch millis
+    private List<Map<String, Object>> answers;      // [{questionCode, value}, ...] na ordem do ramo
+
+    public CompletedSession(String questionnaireId, long completedAt, List<Map<String, Object>> answers) {
+        this.questionnaireId = questionnaireId;
+        this.completedAt = completedAt;
+        this.answers = answers;
+    }
+}
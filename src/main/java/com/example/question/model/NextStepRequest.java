@@ -0,0 +1,55 @@
+package com.example.question.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Corpo de {@code /question_next_step}, ligado diretamente pelo Jackson (sem Map intermediário).
+ * Aceita as respostas em `answers` (recomendado) ou `comboQuestions` (formato legado {key, value}).
+ *
+ * As respostas podem ser a lista completa da sessão ou apenas as novas e alteradas (protocolo delta);
+ * em ambos os casos o último item é a resposta da pergunta atual. `sessionVersion` (opcional) é a
+ * versão da sessão sobre a qual o delta foi montado, devolvida no header Session-Version do passo anterior.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record NextStepRequest(String sessionId, Long sessionVersion, Payload questionnaire) {
+
+    public NextStepRequest {
+        if (sessionId == null) sessionId = "defaultSession";
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Payload(String questionnaireId, List<IncomingAnswer> answers, List<ComboAnswer> comboQuestions) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record IncomingAnswer(String questionCode, Object value) {
+
+        public IncomingAnswer {
+            if (questionCode != null) questionCode = questionCode.trim();
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record ComboAnswer(String key, Object value) {
+    }
+
+    public String questionnaireId() {
+        return questionnaire == null ? null : questionnaire.questionnaireId();
+    }
+
+    /**
+     * Respostas recebidas no formato padronizado: `answers` quando presente, senão `comboQuestions`.
+     */
+    public List<IncomingAnswer> incomingAnswers() {
+        if (questionnaire == null) return Collections.emptyList();
+        if (questionnaire.answers() != null) return questionnaire.answers();
+        if (questionnaire.comboQuestions() == null) return Collections.emptyList();
+        List<IncomingAnswer> converted = new ArrayList<>(questionnaire.comboQuestions().size());
+        for (ComboAnswer c : questionnaire.comboQuestions()) converted.add(new IncomingAnswer(c.key(), c.value()));
+        return converted;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.question.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Resposta de {@code /question_next_step}: a próxima pergunta ({questionnaireId, questions}) ou o
+ * fim do fluxo ({message, summary}). Campos nulos não são serializados.
+ *
+ * No caminho quente a próxima pergunta é servida já renderizada ({@code QuestionJsonCache}), no mesmo formato.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NextStepResponse(String questionnaireId, List<Question> questions, String message, List<SummaryEntry> summary) {
+
+    public static final String END_MESSAGE = "Fim do questionário";
+
+    public static NextStepResponse end(List<SummaryEntry> summary) {
+        return new NextStepResponse(null, null, END_MESSAGE, summary);
+    }
+
+    /**
+     * Entrada do resumo: a pergunta do ramo e a resposta dada (null quando não respondida diretamente).
+     */
+    public record SummaryEntry(Question question, Object answer) {
+    }
+}
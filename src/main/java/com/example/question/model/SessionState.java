@@ -0,0 +1,23 @@
+package com.example.question.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+public class SessionState {
+    private String questionnaireId;                 // questionário ao qual a sessão pertence
+    private List<Map<String, Object>> answers;      // [{questionCode, value}, ...]
+    private boolean complete = true;                // false quando apenas parte das respostas foi lida
+    private long version;                           // versão lida do Redis (0 quando a sessão não existe)
+    private List<String> path;                      // ramo ativo persistido (códigos, a partir do root) ou null
+    private int pathStructure;                      // structureHash do questionário para o qual o ramo foi calculado
+
+    public SessionState(String questionnaireId, List<Map<String, Object>> answers) {
+        this.questionnaireId = questionnaireId;
+        this.answers = answers;
+    }
+}
@@ -0,0 +1,296 @@
+package com.example.question.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribuição das respostas e funil (abandono) por questionário, alimentados por /question_next_step.
+ *
+ * Os contadores ficam em memória, indexados pelos ids do {@link CompiledQuestionnaire}, e são
+ * {@link LongAdder}: o caminho do request apenas incrementa, sem locks. Periodicamente
+ * ({@code analytics.flush-interval}) o que foi contado desde o último envio vai para o Redis em um único
+ * pipeline de HINCRBY no hash {@code analytics:<questionnaireId>}, somando os nós. A leitura
+ * ({@link #report(CompiledQuestionnaire)}) usa apenas esse hash e o que este nó ainda não enviou, sem
+ * tocar nas chaves de sessão.
+ *
+ * Por pergunta: presented (passos que gravaram uma resposta nova ou alterada e levaram a ela, ainda sem
+ * resposta; reenvios não contam), answered (primeira resposta), edited (resposta alterada) e, para
+ * combo/boolean, a contagem de cada opção (uma edição move a contagem da opção anterior para a nova).
+ * Por questionário: completed (sessões concluídas).
+ */
+@Component
+public class AnswerAnalytics {
+
+    private static final Logger log = LoggerFactory.getLogger(AnswerAnalytics.class);
+
+    static final String KEY_PREFIX = "analytics:";
+    static final String COMPLETED_FIELD = "completed";
+
+    @Autowired
+    @Qualifier("sessionRedisTemplate")
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    @Autowired
+    @Qualifier("sessionReadTemplate")
+    private RedisTemplate<String, byte[]> readTemplate;
+
+    @Value("${analytics.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${analytics.flush-interval:10s}")
+    private Duration flushInterval;
+
+    // questionnaireId:fingerprint -> contadores (mesma tabela de códigos = mesmos ids)
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+    private ThreadPoolTaskScheduler scheduler;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) return;
+        scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("analytics-flush-");
+        scheduler.initialize();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler == null) return;
+        scheduler.shutdown();
+        flushQuietly();
+    }
+
+    /**
+     * A pergunta foi apresentada (ainda sem resposta na sessão) por um passo que gravou uma mudança.
+     */
+    public void presented(CompiledQuestionnaire graph, int id) {
+        if (enabled && id != CompiledQuestionnaire.NONE) counters(graph).presented[id].increment();
+    }
+
+    /**
+     * Resposta incluída (`previous` null) ou alterada na sessão.
+     */
+    public void answered(CompiledQuestionnaire graph, int id, Object previous, Object value) {
+        if (!enabled || id == CompiledQuestionnaire.NONE) return;
+        Counters c = counters(graph);
+        if (previous == null) {
+            c.answered[id].increment();
+        } else {
+            c.edited[id].increment();
+            int before = graph.answerIndex(id, String.valueOf(previous));
+            if (before != CompiledQuestionnaire.NONE) c.choices[id][before].decrement();
+        }
+        int after = value == null ? CompiledQuestionnaire.NONE : graph.answerIndex(id, String.valueOf(value));
+        if (after != CompiledQuestionnaire.NONE) c.choices[id][after].increment();
+    }
+
+    public void completed(CompiledQuestionnaire graph) {
+        if (enabled) counters(graph).completed.increment();
+    }
+
+    private Counters counters(CompiledQuestionnaire graph) {
+        String key = graph.getQuestionnaireId() + ":" + graph.fingerprint();
+        Counters c = counters.get(key);
+        return c != null ? c : counters.computeIfAbsent(key, k -> new Counters(graph));
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // o que não foi enviado continua pendente para o próximo ciclo
+            log.warn("analytics flush to Redis failed: {}", e.toString());
+        }
+    }
+
+    /**
+     * Envia ao Redis os incrementos pendentes de todos os questionários em um único pipeline.
+     * Sincronizado apenas entre envios (agendado e final); os incrementos dos requests não bloqueiam.
+     */
+    synchronized void flush() {
+        List<Pending> pending = new ArrayList<>();
+        for (Counters c : counters.values()) c.collect(pending);
+        if (pending.isEmpty()) return;
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Pending p : pending) hincrby(connection, p.key(), p.field(), p.delta());
+            return null;
+        });
+        for (Pending p : pending) p.counter().flushed += p.delta();
+    }
+
+    private static void hincrby(RedisConnection connection, String key, String field, long delta) {
+        connection.hashCommands().hIncrBy(key.getBytes(StandardCharsets.UTF_8), field.getBytes(StandardCharsets.UTF_8), delta);
+    }
+
+    /**
+     * Distribuição e funil do questionário: valores agregados no Redis (lidos das réplicas, se habilitadas)
+     * somados ao que este nó ainda não enviou.
+     */
+    public Map<String, Object> report(CompiledQuestionnaire graph) {
+        Map<String, Long> totals = unsent(graph);
+        Map<byte[], byte[]> stored = readTemplate.execute((RedisCallback<Map<byte[], byte[]>>) connection ->
+                connection.hashCommands().hGetAll(key(graph.getQuestionnaireId()).getBytes(StandardCharsets.UTF_8)));
+        if (stored != null) {
+            stored.forEach((field, value) -> totals.merge(new String(field, StandardCharsets.UTF_8),
+                    Long.parseLong(new String(value, StandardCharsets.US_ASCII)), Long::sum));
+        }
+
+        List<Map<String, Object>> questions = new ArrayList<>(graph.size());
+        for (int id = 0; id < graph.size(); id++) {
+            String code = graph.code(id);
+            long presented = totals.getOrDefault(presentedField(code), 0L);
+            long answered = totals.getOrDefault(answeredField(code), 0L);
+            Map<String, Object> q = new LinkedHashMap<>();
+            q.put("questionCode", code);
+            q.put("presented", presented);
+            q.put("answered", answered);
+            q.put("edited", totals.getOrDefault(editedField(code), 0L));
+            q.put("dropOff", Math.max(0, presented - answered));
+            if (graph.isBranching(id) && graph.question(id).getAnswers() != null) {
+                Map<String, Long> distribution = new LinkedHashMap<>();
+                for (var answer : graph.question(id).getAnswers()) {
+                    distribution.put(answer.getCode(), totals.getOrDefault(choiceField(code, answer.getCode()), 0L));
+                }
+                q.put("answers", distribution);
+            }
+            questions.add(q);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("questionnaireId", graph.getQuestionnaireId());
+        body.put("completed", totals.getOrDefault(COMPLETED_FIELD, 0L));
+        body.put("questions", questions);
+        return body;
+    }
+
+    /**
+     * Incrementos contados por este nó e ainda não enviados ao Redis, por campo do hash.
+     */
+    Map<String, Long> unsent(CompiledQuestionnaire graph) {
+        Map<String, Long> fields = new HashMap<>();
+        Counters local = counters.get(graph.getQuestionnaireId() + ":" + graph.fingerprint());
+        if (local == null) return fields;
+        List<Pending> pending = new ArrayList<>();
+        local.collect(pending);
+        for (Pending p : pending) fields.merge(p.field(), p.delta(), Long::sum);
+        return fields;
+    }
+
+    static String key(String questionnaireId) {
+        return KEY_PREFIX + questionnaireId;
+    }
+
+    private static String presentedField(String code) {
+        return "p:" + code;
+    }
+
+    private static String answeredField(String code) {
+        return "a:" + code;
+    }
+
+    private static String editedField(String code) {
+        return "e:" + code;
+    }
+
+    private static String choiceField(String code, String answerCode) {
+        return "c:" + code + ":" + answerCode;
+    }
+
+    /**
+     * Contador acumulado e quanto dele já foi enviado. `flushed` só é alterado dentro de {@link #flush()}.
+     */
+    private static final class Counter {
+        private final LongAdder total = new LongAdder();
+        volatile long flushed;
+
+        void increment() {
+            total.increment();
+        }
+
+        void decrement() {
+            total.decrement();
+        }
+
+        long sum() {
+            return total.sum();
+        }
+    }
+
+    private record Pending(Counter counter, String key, String field, long delta) {
+    }
+
+    /**
+     * Contadores de uma versão (tabela de códigos) de um questionário.
+     */
+    private static final class Counters {
+        final CompiledQuestionnaire graph;
+        final String key;
+        final Counter[] presented;
+        final Counter[] answered;
+        final Counter[] edited;
+        final Counter[][] choices;
+        final Counter completed = new Counter();
+
+        Counters(CompiledQuestionnaire graph) {
+            int n = graph.size();
+            this.graph = graph;
+            this.key = key(graph.getQuestionnaireId());
+            this.presented = newCounters(n);
+            this.answered = newCounters(n);
+            this.edited = newCounters(n);
+            this.choices = new Counter[n][];
+            for (int id = 0; id < n; id++) {
+                var answers = graph.question(id).getAnswers();
+                choices[id] = newCounters(graph.isBranching(id) && answers != null ? answers.size() : 0);
+            }
+        }
+
+        private static Counter[] newCounters(int n) {
+            Counter[] counters = new Counter[n];
+            for (int i = 0; i < n; i++) counters[i] = new Counter();
+            return counters;
+        }
+
+        /**
+         * Incrementos ainda não enviados (sum() - flushed), sem zerar os contadores: incrementos
+         * concorrentes com a coleta ficam para o próximo envio em vez de se perderem.
+         */
+        void collect(List<Pending> out) {
+            add(out, completed, COMPLETED_FIELD);
+            for (int id = 0; id < presented.length; id++) {
+                String code = graph.code(id);
+                add(out, presented[id], presentedField(code));
+                add(out, answered[id], answeredField(code));
+                add(out, edited[id], editedField(code));
+                for (int i = 0; i < choices[id].length; i++) {
+                    add(out, choices[id][i], choiceField(code, graph.question(id).getAnswers().get(i).getCode()));
+                }
+            }
+        }
+
+        private void add(List<Pending> out, Counter counter, String field) {
+            long delta = counter.sum() - counter.flushed;
+            if (delta != 0) out.add(new Pending(counter, key, field, delta));
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.question.service;
+
+import com.example.question.model.Answer;
+import com.example.question.model.Question;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Year;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Validação da resposta de uma pergunta, compilada uma única vez na carga do questionário (ver
+ * {@link CompiledQuestionnaire#validator(int)}).
+ *
+ * Combos e booleanos consultam um conjunto pré-calculado com os códigos das respostas; datas, datas com
+ * hora e valores são verificados por parsers que não lançam exceção, no mesmo formato aceito por
+ * {@code LocalDate.parse}, {@code LocalDateTime.parse} e {@code new BigDecimal}. A moeda de um valor
+ * deve ser um código ISO 4217.
+ */
+public final class AnswerValidator {
+
+    private static final Set<String> CURRENCIES = currencyCodes();
+
+    private enum Kind { TEXT, OPTION, DATE, DATE_TIME, AMOUNT, UNSUPPORTED }
+
+    private final Kind kind;
+    private final boolean mandatory;
+    private final Set<String> options;
+    private final String type;
+
+    private AnswerValidator(Kind kind, boolean mandatory, Set<String> options, String type) {
+        this.kind = kind;
+        this.mandatory = mandatory;
+        this.options = options;
+        this.type = type;
+    }
+
+    public static AnswerValidator of(Question question) {
+        String type = question.getAnswerDataTypeDescription();
+        Kind kind = type == null ? Kind.UNSUPPORTED : switch (type) {
+            case "simple-text", "simple-textarea" -> Kind.TEXT;
+            case "combo", "boolean" -> Kind.OPTION;
+            case "date" -> Kind.DATE;
+            case "dateTime" -> Kind.DATE_TIME;
+            case "amount" -> Kind.AMOUNT;
+            default -> Kind.UNSUPPORTED;
+        };
+        Set<String> options = Collections.emptySet();
+        if (kind == Kind.OPTION && question.getAnswers() != null) {
+            options = new HashSet<>(question.getAnswers().size() * 2);
+            for (Answer a : question.getAnswers()) {
+                if (a.getCode() != null) options.add(a.getCode());
+            }
+        }
+        return new AnswerValidator(kind, question.isMandatory(), options, type);
+    }
+
+    /**
+     * Retorna null quando o valor é aceito, ou a descrição do problema.
+     */
+    public String check(Object value) {
+        if (value == null) return mandatory ? "resposta obrigatória" : null;
+        switch (kind) {
+            case TEXT:
+                return value instanceof String ? null : "esperado texto";
+            case OPTION:
+                return value instanceof String s && options.contains(s) ? null : "opção inexistente";
+            case DATE:
+                return value instanceof String s && isIsoDate(s, 0, s.length()) ? null : "data inválida, esperado yyyy-MM-dd";
+            case DATE_TIME:
+                return value instanceof String s && isIsoDateTime(s) ? null : "data e hora inválidas, esperado yyyy-MM-ddTHH:mm[:ss]";
+            case AMOUNT:
+                return checkAmount(value);
+            default:
+                return "tipo de resposta não suportado: " + type;
+        }
+    }
+
+    private static String checkAmount(Object value) {
+        if (!(value instanceof Map<?, ?> amount)) return "esperado {amount, currency}";
+        if (!isDecimal(amount.get("amount"))) return "valor inválido";
+        Object currency = amount.get("currency");
+        if (!(currency instanceof String code) || !CURRENCIES.contains(code)) return "moeda inválida";
+        return null;
+    }
+
+    /**
+     * yyyy-MM-dd com mês e dia existentes (inclui anos bissextos).
+     */
+    static boolean isIsoDate(String s, int from, int to) {
+        if (to - from != 10 || s.charAt(from + 4) != '-' || s.charAt(from + 7) != '-') return false;
+        int year = digits(s, from, 4);
+        int month = digits(s, from + 5, 2);
+        int day = digits(s, from + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1) return false;
+        int days = switch (month) {
+            case 2 -> Year.isLeap(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+        return day <= days;
+    }
+
+    /**
+     * yyyy-MM-ddTHH:mm, com segundos e fração (até 9 dígitos) opcionais.
+     */
+    static boolean isIsoDateTime(String s) {
+        int n = s.length();
+        if (n < 16 || s.charAt(10) != 'T' || !isIsoDate(s, 0, 10)) return false;
+        if (s.charAt(13) != ':' || !inRange(digits(s, 11, 2), 23) || !inRange(digits(s, 14, 2), 59)) return false;
+        if (n == 16) return true;
+        if (n < 19 || s.charAt(16) != ':' || !inRange(digits(s, 17, 2), 59)) return false;
+        if (n == 19) return true;
+        int fraction = n - 20;
+        return s.charAt(19) == '.' && fraction >= 1 && fraction <= 9 && digits(s, 20, fraction) >= 0;
+    }
+
+    /**
+     * Número aceito por {@code new BigDecimal(String)}: sinal opcional, dígitos com ponto opcional e
+     * expoente opcional. Números do JSON são aceitos quando finitos.
+     */
+    static boolean isDecimal(Object value) {
+        if (value instanceof Double d) return Double.isFinite(d);
+        if (value instanceof Float f) return Float.isFinite(f);
+        if (value instanceof Integer || value instanceof Long || value instanceof BigDecimal || value instanceof BigInteger) {
+            return true;
+        }
+        if (!(value instanceof String s)) return false;
+        int i = 0;
+        int n = s.length();
+        if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+        int mantissa = 0;
+        while (i < n && isDigit(s.charAt(i))) { i++; mantissa++; }
+        if (i < n && s.charAt(i) == '.') {
+            i++;
+            while (i < n && isDigit(s.charAt(i))) { i++; mantissa++; }
+        }
+        if (mantissa == 0) return false;
+        if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) i++;
+            int exponent = 0;
+            while (i < n && isDigit(s.charAt(i))) { i++; exponent++; }
+            // expoente além de int não é aceito pelo BigDecimal
+            if (exponent == 0 || exponent > 9) return false;
+        }
+        return i == n;
+    }
+
+    private static boolean inRange(int value, int max) {
+        return value >= 0 && value <= max;
+    }
+
+    /**
+     * Valor dos `count` dígitos a partir de `from`, ou -1 se algum não for dígito.
+     */
+    private static int digits(String s, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static Set<String> currencyCodes() {
+        Set<String> codes = new HashSet<>();
+        for (Currency c : Currency.getAvailableCurrencies()) codes.add(c.getCurrencyCode());
+        return Set.copyOf(codes);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.question.service;
+
+import com.example.question.model.Question;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Ramo ativo de uma sessão (perguntas respondidas ou necessárias para chegar até respostas, a partir
+ * do root), como ids de um {@link CompiledQuestionnaire}.
+ *
+ * O ramo é persistido junto com a sessão e atualizado de forma incremental: quando respostas são
+ * incluídas, alteradas ou podadas, apenas o trecho a partir da primeira pergunta cuja decisão pode ter
+ * mudado é percorrido de novo. Retomadas e resumos usam o ramo salvo sem refazer o caminho desde o root.
+ */
+public final class BranchCursor {
+
+    private final CompiledQuestionnaire graph;
+    private int[] ids;
+    private int size;
+
+    private BranchCursor(CompiledQuestionnaire graph, int capacity) {
+        this.graph = graph;
+        this.ids = new int[Math.max(4, capacity)];
+    }
+
+    /**
+     * Calcula o ramo completo a partir do root.
+     */
+    public static BranchCursor build(SessionAnswers answers) {
+        BranchCursor cursor = new BranchCursor(answers.graph(), 16);
+        cursor.walkFrom(answers, answers.graph().rootId());
+        return cursor;
+    }
+
+    /**
+     * Restaura um ramo persistido. Retorna null quando o ramo não existe ou foi calculado para outra
+     * estrutura do questionário (ver {@link CompiledQuestionnaire#structureHash()}).
+     */
+    public static BranchCursor restore(CompiledQuestionnaire graph, List<String> codes, int structureHash) {
+        if (codes == null || structureHash != graph.structureHash()) return null;
+        BranchCursor cursor = new BranchCursor(graph, codes.size());
+        for (String code : codes) {
+            int id = graph.idOf(code);
+            if (id == CompiledQuestionnaire.NONE) return null;
+            cursor.push(id);
+        }
+        return cursor;
+    }
+
+    /**
+     * Atualiza o ramo depois que as respostas de `changed` (ids incluídos, alterados ou removidos)
+     * mudaram em `answers`. Perguntas anteriores à primeira afetada mantêm a mesma decisão e não são revisitadas.
+     */
+    public void update(SessionAnswers answers, BitSet changed) {
+        if (changed.isEmpty()) return;
+        for (int i = 0; i < size; i++) {
+            int id = ids[i];
+            // respondida e inalterada: segue pelo mesmo filho; sem resposta: depende das respostas da subtree
+            boolean affected = changed.get(id) || (!answers.has(id) && graph.subtreeIntersects(id, changed));
+            if (affected) {
+                size = i;
+                walkFrom(answers, id);
+                return;
+            }
+        }
+        // nenhuma decisão do ramo mudou: apenas tenta estendê-lo a partir da última pergunta
+        if (size == 0) {
+            walkFrom(answers, graph.rootId());
+        } else {
+            int last = ids[--size];
+            walkFrom(answers, last);
+        }
+    }
+
+    private void walkFrom(SessionAnswers answers, int start) {
+        BitSet answered = answers.answeredIds();
+        int current = start;
+        // questionários publicados são acíclicos (QuestionnaireValidator): o ramo nunca passa do número de
+        // perguntas, e o limite só protege grafos compilados sem validação
+        while (current != CompiledQuestionnaire.NONE && size < graph.size()) {
+            boolean isAnswered = answered.get(current);
+            if (!isAnswered && !graph.subtreeIntersects(current, answered)) break;
+            push(current);
+            current = isAnswered ? graph.nextId(current, answers.valueString(current)) : childLeadingTo(current, answered);
+        }
+    }
+
+    /**
+     * Filho direto cuja subtree contém uma pergunta respondida, ou {@link CompiledQuestionnaire#NONE}.
+     */
+    private int childLeadingTo(int id, BitSet answered) {
+        for (int child : graph.children(id)) {
+            if (graph.subtreeIntersects(child, answered)) return child;
+        }
+        return CompiledQuestionnaire.NONE;
+    }
+
+    private void push(int id) {
+        if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        ids[size++] = id;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Última pergunta do ramo ou {@link CompiledQuestionnaire#NONE} quando vazio.
+     */
+    public int last() {
+        return size == 0 ? CompiledQuestionnaire.NONE : ids[size - 1];
+    }
+
+    /**
+     * Códigos do ramo, no formato persistido com a sessão.
+     */
+    public List<String> codes() {
+        List<String> codes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) codes.add(graph.code(ids[i]));
+        return codes;
+    }
+
+    public List<Question> questions() {
+        List<Question> questions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) questions.add(graph.question(ids[i]));
+        return questions;
+    }
+
+    /**
+     * Indica se o ramo contém exatamente os códigos informados (para evitar regravar um ramo inalterado).
+     */
+    public boolean sameAs(List<String> codes) {
+        if (codes == null || codes.size() != size) return false;
+        for (int i = 0; i < size; i++) {
+            if (!graph.code(ids[i]).equals(codes.get(i))) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,526 @@
+package com.example.question.service;
+
+import com.example.question.model.Answer;
+import com.example.question.model.Question;
+import com.example.question.model.Questionnaire;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Grafo imutável compilado a partir de um {@link Questionnaire} no momento da carga.
+ *
+ * Cada pergunta recebe um id inteiro (sua posição na lista original). A navegação usa um índice
+ * code -> id e, para perguntas do tipo combo/boolean, uma tabela answerCode -> índice da resposta
+ * com o id do filho correspondente, evitando buscas lineares e streams a cada chamada.
+ *
+ * Também pré-calcula, uma única vez por versão do questionário, o conjunto de descendentes de cada
+ * pergunta como {@link BitSet} indexado por id. Consultas do tipo "a subtree contém alguma pergunta
+ * respondida" viram uma interseção de bitsets e a poda de uma subtree vira uma operação de máscara.
+ *
+ * A análise estrutural (ordem topológica, ciclos, filhos inexistentes, perguntas inalcançáveis e
+ * profundidade máxima) é feita na compilação, sem recursão, e usada por {@link QuestionnaireValidator}
+ * para rejeitar definições inválidas antes da publicação.
+ *
+ * A ordem topológica, os descendentes e a profundidade máxima também podem vir prontos de uma imagem
+ * binária gerada no build ({@link QuestionnaireImage}), evitando refazer a análise a cada inicialização.
+ */
+public final class CompiledQuestionnaire {
+
+    /** Valor usado para indicar ausência de pergunta (fim do fluxo ou código inexistente). */
+    public static final int NONE = -1;
+
+    private final Questionnaire source;
+    private final Question[] questions;
+    private final String[] codes;
+    private final Map<String, Integer> idByCode;
+    private final boolean[] branching;
+
+    // perguntas não-branching: childQuestion direto
+    private final String[] childCode;
+    private final int[] childId;
+
+    // perguntas combo/boolean: answerCode -> índice da resposta, e filhos por índice
+    private final List<Map<String, Integer>> answerIndexByCode;
+    private final String[][] answerChildCode;
+    private final int[][] answerChildId;
+
+    // validação da resposta de cada pergunta
+    private final AnswerValidator[] validators;
+
+    // todos os filhos existentes de cada pergunta, na ordem de declaração
+    private final int[][] children;
+
+    // perguntas em ordem topológica reversa (filhos antes dos pais); incompleta quando há ciclo
+    private final int[] reverseOrder;
+
+    // descendentes de cada pergunta (incluindo ela mesma)
+    private final BitSet[] descendants;
+
+    // maior número de perguntas em um caminho a partir do root
+    private final int maxDepth;
+    // perguntas + palavras de 64 bits dos descendentes (crescem com n²)
+    private final long footprint;
+
+    // identifica a tabela de códigos (perguntas e respostas, na ordem dos ids)
+    private final int fingerprint;
+
+    // identifica a tabela de códigos e as ligações entre perguntas (filhos de cada resposta)
+    private final int structureHash;
+
+    /**
+     * Análise estrutural já calculada (lida de uma {@link QuestionnaireImage}).
+     */
+    record Precomputed(int[] reverseOrder, BitSet[] descendants, int maxDepth) {
+    }
+
+    private CompiledQuestionnaire(Questionnaire source, Precomputed precomputed) {
+        this.source = source;
+        List<Question> list = source.getQuestions() == null ? Collections.emptyList() : source.getQuestions();
+        int n = list.size();
+        this.questions = list.toArray(new Question[0]);
+        this.codes = new String[n];
+        this.idByCode = new HashMap<>(n * 2);
+        this.branching = new boolean[n];
+        this.childCode = new String[n];
+        this.childId = new int[n];
+        this.answerIndexByCode = new ArrayList<>(n);
+        this.answerChildCode = new String[n][];
+        this.answerChildId = new int[n][];
+        this.children = new int[n][];
+        this.validators = new AnswerValidator[n];
+        this.descendants = new BitSet[n];
+
+        for (int id = 0; id < n; id++) {
+            String code = questions[id].getCode();
+            codes[id] = code;
+            // mantém a semântica de findQuestionByCode: a primeira ocorrência vence
+            if (code != null) idByCode.putIfAbsent(code, id);
+        }
+
+        for (int id = 0; id < n; id++) {
+            Question q = questions[id];
+            branching[id] = isBranchingType(q.getAnswerDataTypeDescription());
+            validators[id] = AnswerValidator.of(q);
+            childCode[id] = q.getChildQuestion() == null ? null : q.getChildQuestion().getCode();
+            childId[id] = resolve(childCode[id]);
+
+            List<Answer> answers = q.getAnswers() == null ? Collections.emptyList() : q.getAnswers();
+            Map<String, Integer> index = new HashMap<>(Math.max(4, answers.size() * 2));
+            String[] ac = new String[answers.size()];
+            int[] ai = new int[answers.size()];
+            for (int i = 0; i < answers.size(); i++) {
+                Answer a = answers.get(i);
+                if (a.getCode() != null) index.putIfAbsent(a.getCode(), i);
+                ac[i] = a.getChildQuestion() == null ? null : a.getChildQuestion().getCode();
+                ai[i] = resolve(ac[i]);
+            }
+            answerIndexByCode.add(index);
+            answerChildCode[id] = ac;
+            answerChildId[id] = ai;
+
+            if (branching[id]) {
+                int count = 0;
+                int[] tmp = new int[ai.length];
+                for (int child : ai) if (child != NONE) tmp[count++] = child;
+                children[id] = count == tmp.length ? tmp : Arrays.copyOf(tmp, count);
+            } else {
+                children[id] = childId[id] == NONE ? new int[0] : new int[]{childId[id]};
+            }
+        }
+
+        if (precomputed == null) {
+            this.reverseOrder = computeReverseTopologicalOrder();
+            computeDescendants();
+            this.maxDepth = computeMaxDepth();
+        } else {
+            if (precomputed.descendants().length != n) {
+                throw new IllegalStateException("Imagem do questionário não corresponde às perguntas");
+            }
+            this.reverseOrder = precomputed.reverseOrder();
+            System.arraycopy(precomputed.descendants(), 0, descendants, 0, n);
+            this.maxDepth = precomputed.maxDepth();
+        }
+        long words = 0;
+        for (BitSet d : descendants) words += d.size() / Long.SIZE;
+        this.footprint = n + words;
+        this.fingerprint = computeFingerprint();
+        this.structureHash = computeStructureHash();
+    }
+
+    private int computeStructureHash() {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(4).putInt(fingerprint).array());
+        ByteBuffer links = ByteBuffer.allocate(4);
+        for (int id = 0; id < questions.length; id++) {
+            crc.update(branching[id] ? 1 : 0);
+            for (int child : branching[id] ? answerChildId[id] : new int[]{childId[id]}) {
+                links.clear();
+                crc.update(links.putInt(child).array());
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private int computeFingerprint() {
+        CRC32 crc = new CRC32();
+        update(crc, source.getQuestionnaireId());
+        for (int id = 0; id < questions.length; id++) {
+            update(crc, codes[id]);
+            List<Answer> answers = questions[id].getAnswers();
+            if (answers == null) continue;
+            for (Answer a : answers) update(crc, a.getCode());
+        }
+        return (int) crc.getValue();
+    }
+
+    private static void update(CRC32 crc, String value) {
+        if (value != null) crc.update(value.getBytes(StandardCharsets.UTF_8));
+        crc.update(0);
+    }
+
+    /**
+     * Ordena os nós removendo folhas sucessivamente (Kahn sobre o grau de saída, sem recursão): cada nó
+     * entra na ordem depois de todos os seus filhos. Nós que nunca ficam sem filhos pendentes fazem parte
+     * de um ciclo ou levam a um, e ficam fora da ordem.
+     */
+    private int[] computeReverseTopologicalOrder() {
+        int n = questions.length;
+        int[] pending = new int[n];
+        int[] parentStart = new int[n + 1];
+        for (int id = 0; id < n; id++) {
+            pending[id] = children[id].length;
+            for (int child : children[id]) parentStart[child + 1]++;
+        }
+        for (int id = 0; id < n; id++) parentStart[id + 1] += parentStart[id];
+        int[] parents = new int[parentStart[n]];
+        int[] fill = Arrays.copyOf(parentStart, n);
+        for (int id = 0; id < n; id++) {
+            for (int child : children[id]) parents[fill[child]++] = id;
+        }
+
+        int[] order = new int[n];
+        int count = 0;
+        for (int id = 0; id < n; id++) if (pending[id] == 0) order[count++] = id;
+        for (int head = 0; head < count; head++) {
+            int id = order[head];
+            for (int p = parentStart[id]; p < parentStart[id + 1]; p++) {
+                if (--pending[parents[p]] == 0) order[count++] = parents[p];
+            }
+        }
+        return count == n ? order : Arrays.copyOf(order, count);
+    }
+
+    /**
+     * Calcula o fecho transitivo dos filhos em uma única passagem na ordem de {@link #reverseOrder}: os
+     * descendentes de cada filho já estão completos quando o pai é visitado. Nós em ciclo (questionário
+     * inválido, rejeitado por {@link QuestionnaireValidator#validateStructure}) são resolvidos por
+     * iteração até não haver mudança.
+     */
+    private void computeDescendants() {
+        int n = questions.length;
+        for (int id = 0; id < n; id++) {
+            BitSet self = new BitSet(n);
+            self.set(id);
+            descendants[id] = self;
+        }
+        for (int id : reverseOrder) {
+            for (int child : children[id]) descendants[id].or(descendants[child]);
+        }
+        if (reverseOrder.length == n) return;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int id = n - 1; id >= 0; id--) {
+                BitSet acc = descendants[id];
+                int before = acc.cardinality();
+                for (int child : children[id]) acc.or(descendants[child]);
+                if (acc.cardinality() != before) changed = true;
+            }
+        }
+    }
+
+    /**
+     * Maior número de perguntas em um caminho a partir do root, percorrendo a ordem topológica do fim
+     * para o início. Zero quando o questionário está vazio ou possui ciclo.
+     */
+    private int computeMaxDepth() {
+        int n = questions.length;
+        if (n == 0 || reverseOrder.length != n) return 0;
+        int[] depth = new int[n];
+        depth[rootId()] = 1;
+        int max = 1;
+        for (int i = n - 1; i >= 0; i--) {
+            int id = reverseOrder[i];
+            if (depth[id] == 0) continue;
+            max = Math.max(max, depth[id]);
+            for (int child : children[id]) depth[child] = Math.max(depth[child], depth[id] + 1);
+        }
+        return max;
+    }
+
+    /**
+     * Compila o questionário informado. A instância retornada não deve ser alterada depois.
+     */
+    public static CompiledQuestionnaire compile(Questionnaire questionnaire) {
+        return new CompiledQuestionnaire(questionnaire, null);
+    }
+
+    /**
+     * Monta o grafo com a análise estrutural já calculada, sem percorrê-lo novamente.
+     */
+    static CompiledQuestionnaire compile(Questionnaire questionnaire, Precomputed precomputed) {
+        return new CompiledQuestionnaire(questionnaire, precomputed);
+    }
+
+    /**
+     * Análise estrutural deste grafo, para gravação em uma {@link QuestionnaireImage}. Os arrays são
+     * compartilhados e não devem ser alterados.
+     */
+    Precomputed precomputed() {
+        return new Precomputed(reverseOrder, descendants, maxDepth);
+    }
+
+    static boolean isBranchingType(String type) {
+        return "combo".equals(type) || "boolean".equals(type);
+    }
+
+    private int resolve(String code) {
+        if (code == null) return NONE;
+        Integer id = idByCode.get(code);
+        return id == null ? NONE : id;
+    }
+
+    public Questionnaire getSource() {
+        return source;
+    }
+
+    public String getQuestionnaireId() {
+        return source.getQuestionnaireId();
+    }
+
+    /**
+     * Identificador da tabela de códigos desta versão: muda quando perguntas ou respostas são
+     * incluídas, removidas ou reordenadas, e permanece igual quando só textos mudam.
+     */
+    public int fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Identificador da estrutura desta versão: além da tabela de códigos ({@link #fingerprint()}), muda
+     * quando o filho de alguma resposta muda. Um ramo calculado para uma estrutura só vale para ela.
+     */
+    public int structureHash() {
+        return structureHash;
+    }
+
+    public int size() {
+        return questions.length;
+    }
+
+    /**
+     * Id da pergunta root (primeira do questionário) ou {@link #NONE} quando vazio.
+     */
+    public int rootId() {
+        return questions.length == 0 ? NONE : 0;
+    }
+
+    public int idOf(String code) {
+        return resolve(code);
+    }
+
+    public Question question(int id) {
+        return questions[id];
+    }
+
+    public String code(int id) {
+        return codes[id];
+    }
+
+    public boolean isBranching(int id) {
+        return branching[id];
+    }
+
+    /**
+     * Validação compilada da resposta da pergunta.
+     */
+    public AnswerValidator validator(int id) {
+        return validators[id];
+    }
+
+    /**
+     * Índice da resposta com o código informado na pergunta, ou {@link #NONE}.
+     */
+    public int answerIndex(int id, String answerCode) {
+        if (answerCode == null) return NONE;
+        Integer idx = answerIndexByCode.get(id).get(answerCode);
+        return idx == null ? NONE : idx;
+    }
+
+    /**
+     * Ids dos filhos existentes da pergunta (todas as respostas para combo/boolean, ou o childQuestion).
+     * O array retornado é compartilhado e não deve ser alterado.
+     */
+    public int[] children(int id) {
+        return children[id];
+    }
+
+    /**
+     * Código do próximo passo para a pergunta dada a resposta (valor já convertido para String).
+     * Retorna null quando a resposta leva ao fim do fluxo. O código pode não existir no questionário.
+     */
+    public String nextCode(int id, String value) {
+        if (branching[id]) {
+            int idx = answerIndex(id, value);
+            return idx == NONE ? null : answerChildCode[id][idx];
+        }
+        return childCode[id];
+    }
+
+    /**
+     * Mesmo que {@link #nextCode(int, String)}, mas retornando o id do filho ou {@link #NONE}.
+     */
+    public int nextId(int id, String value) {
+        if (branching[id]) {
+            int idx = answerIndex(id, value);
+            return idx == NONE ? NONE : answerChildId[id][idx];
+        }
+        return childId[id];
+    }
+
+    /**
+     * Converte códigos de perguntas em um conjunto de ids. Códigos desconhecidos são ignorados.
+     */
+    public BitSet toIdSet(Collection<String> questionCodes) {
+        BitSet set = new BitSet(questions.length);
+        for (String code : questionCodes) {
+            int id = resolve(code);
+            if (id != NONE) set.set(id);
+        }
+        return set;
+    }
+
+    /**
+     * Indica se o questionário não possui ciclos entre perguntas.
+     */
+    public boolean isAcyclic() {
+        return reverseOrder.length == questions.length;
+    }
+
+    /**
+     * Tamanho aproximado em memória, em unidades de 8 bytes: uma por pergunta mais as palavras dos
+     * conjuntos de descendentes, que dominam em questionários grandes (O(n²) bits).
+     */
+    public long footprint() {
+        return footprint;
+    }
+
+    /**
+     * Maior número de perguntas em um caminho a partir do root (0 quando vazio ou com ciclo).
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Um ciclo do questionário, como códigos na ordem em que são percorridos (o primeiro volta a ser filho
+     * do último), ou lista vazia quando não há ciclo.
+     */
+    public List<String> findCycle() {
+        if (isAcyclic()) return Collections.emptyList();
+        BitSet ordered = new BitSet(questions.length);
+        for (int id : reverseOrder) ordered.set(id);
+        // fora da ordem, todo nó tem um filho também fora dela: seguindo esses filhos algum nó se repete
+        int[] position = new int[questions.length];
+        Arrays.fill(position, NONE);
+        List<Integer> walk = new ArrayList<>();
+        int current = ordered.nextClearBit(0);
+        while (position[current] == NONE) {
+            position[current] = walk.size();
+            walk.add(current);
+            int next = NONE;
+            for (int child : children[current]) {
+                if (!ordered.get(child)) {
+                    next = child;
+                    break;
+                }
+            }
+            current = next;
+        }
+        List<String> cycle = new ArrayList<>();
+        for (int i = position[current]; i < walk.size(); i++) cycle.add(codes[walk.get(i)]);
+        return cycle;
+    }
+
+    /**
+     * Referências a perguntas inexistentes, no formato "pergunta -> código" (para combo/boolean,
+     * "pergunta[resposta] -> código"). Só considera os filhos usados na navegação do tipo da pergunta.
+     */
+    public List<String> danglingReferences() {
+        List<String> dangling = new ArrayList<>();
+        for (int id = 0; id < questions.length; id++) {
+            if (branching[id]) {
+                for (int i = 0; i < answerChildCode[id].length; i++) {
+                    if (answerChildCode[id][i] != null && answerChildId[id][i] == NONE) {
+                        String answer = questions[id].getAnswers().get(i).getCode();
+                        dangling.add(codes[id] + "[" + answer + "] -> " + answerChildCode[id][i]);
+                    }
+                }
+            } else if (childCode[id] != null && childId[id] == NONE) {
+                dangling.add(codes[id] + " -> " + childCode[id]);
+            }
+        }
+        return dangling;
+    }
+
+    /**
+     * Códigos das perguntas que não são alcançáveis a partir do root por nenhum caminho.
+     */
+    public List<String> unreachable() {
+        List<String> unreachable = new ArrayList<>();
+        if (questions.length == 0) return unreachable;
+        BitSet reachable = descendants[rootId()];
+        for (int id = reachable.nextClearBit(0); id < questions.length; id = reachable.nextClearBit(id + 1)) {
+            unreachable.add(codes[id]);
+        }
+        return unreachable;
+    }
+
+    /**
+     * Indica se a subtree iniciada em `id` (incluindo o próprio nó) contém algum id de `ids`.
+     */
+    public boolean subtreeIntersects(int id, BitSet ids) {
+        return id != NONE && descendants[id].intersects(ids);
+    }
+
+    /**
+     * Indica se `id` pertence à subtree iniciada em `rootId` (incluindo o próprio root).
+     */
+    public boolean inSubtree(int rootId, int id) {
+        return rootId != NONE && id != NONE && descendants[rootId].get(id);
+    }
+
+    /**
+     * Remove de `ids` todas as perguntas da subtree iniciada em `rootId`.
+     */
+    public void clearSubtree(int rootId, BitSet ids) {
+        if (rootId != NONE) ids.andNot(descendants[rootId]);
+    }
+
+    /**
+     * Retorna uma cópia do conjunto de ids da subtree iniciada em `rootId`.
+     */
+    public BitSet subtree(int rootId) {
+        return rootId == NONE ? new BitSet() : (BitSet) descendants[rootId].clone();
+    }
+}
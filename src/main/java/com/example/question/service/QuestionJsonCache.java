@@ -0,0 +1,84 @@
+package com.example.question.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Respostas "próxima pergunta" pré-renderizadas em JSON, uma por pergunta e por versão do questionário.
+ *
+ * O conteúdo de uma pergunta só muda quando o questionário muda; em vez de serializar o {@code Question}
+ * a cada request, o corpo {@code {"questionnaireId":..., "questions":[...]}} é gerado uma única vez (sob
+ * demanda) com o mesmo {@link ObjectMapper} do Spring MVC e reaproveitado como array de bytes. Cada corpo
+ * tem um ETag derivado do conteúdo, que permite ao cliente revalidar sem receber a pergunta de novo.
+ *
+ * As entradas são associadas ao snapshot compilado (chave fraca): quando um reload publica uma nova
+ * versão e a anterior deixa de ser usada, o que foi renderizado para ela é descartado junto.
+ */
+@Component
+public class QuestionJsonCache {
+
+    /**
+     * Corpo JSON pronto e ETag (já entre aspas, no formato do header).
+     */
+    public record Rendered(byte[] json, String etag) {
+    }
+
+    private static final byte[] QUESTIONNAIRE_ID = "{\"questionnaireId\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] QUESTIONS = ",\"questions\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] END = "]}".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Cache<CompiledQuestionnaire, AtomicReferenceArray<Rendered>> bySnapshot =
+            Caffeine.newBuilder().weakKeys().build();
+
+    /**
+     * Resposta pré-renderizada para a pergunta `id` do snapshot informado.
+     */
+    public Rendered nextQuestion(CompiledQuestionnaire graph, int id) {
+        AtomicReferenceArray<Rendered> rendered = bySnapshot.get(graph, g -> new AtomicReferenceArray<>(g.size()));
+        Rendered r = rendered.get(id);
+        if (r == null) {
+            // corridas apenas renderizam o mesmo conteúdo duas vezes
+            r = render(graph, id);
+            rendered.set(id, r);
+        }
+        return r;
+    }
+
+    private Rendered render(CompiledQuestionnaire graph, int id) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+            out.writeBytes(QUESTIONNAIRE_ID);
+            out.writeBytes(objectMapper.writeValueAsBytes(graph.getQuestionnaireId()));
+            out.writeBytes(QUESTIONS);
+            out.writeBytes(objectMapper.writeValueAsBytes(graph.question(id)));
+            out.writeBytes(END);
+            byte[] json = out.toByteArray();
+            return new Rendered(json, etag(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Falha ao serializar a pergunta " + graph.code(id), e);
+        }
+    }
+
+    private static String etag(byte[] json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 12) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.question.service;
+
+import com.example.question.model.Answer;
+import com.example.question.model.ChildQuestion;
+import com.example.question.model.NextAction;
+import com.example.question.model.Question;
+import com.example.question.model.Questionnaire;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Imagem binária de um questionário já validado e compilado, gerada no build
+ * ({@code mvn process-classes}, ver {@link #main(String[])}) para que a inicialização não precise
+ * interpretar o JSON nem refazer a análise do grafo.
+ *
+ * Layout (big-endian): cabeçalho (magic, versão do formato, tamanho e CRC32 do JSON de origem,
+ * fingerprint, structureHash, quantidade de perguntas e profundidade máxima), tabela de strings sem
+ * repetições, perguntas com respostas, próximas ações e orientações referenciando a tabela, ordem
+ * topológica reversa, descendentes de cada pergunta (palavras do {@link BitSet}) e o CRC32 da imagem.
+ *
+ * Em execução a imagem é mapeada somente leitura ({@link FileChannel#map}) e usada quando corresponde
+ * ao JSON presente (mesmo tamanho e CRC32); caso contrário o serviço volta a carregar o JSON. A imagem
+ * do build vai para as classes compiladas e é lida do classpath ({@link #loadResource}); dentro de um
+ * jar, onde não há arquivo para mapear, é copiada para a memória.
+ */
+public final class QuestionnaireImage {
+
+    private static final Logger log = LoggerFactory.getLogger(QuestionnaireImage.class);
+
+    /** Extensão das imagens geradas ao lado das definições. */
+    public static final String EXTENSION = ".qimg";
+
+    private static final int MAGIC = 0x51494D47; // "QIMG"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 36;
+    private static final int NULL = -1;
+
+    private static final int MANDATORY = 1;
+    private static final int CREDIT_BOOKED = 2;
+    private static final int DOCUMENT_MANDATORY = 4;
+    private static final int COMMENT_MANDATORY = 8;
+
+    private QuestionnaireImage() {
+    }
+
+    /**
+     * Compila as definições informadas em pares {@code <json> <imagem>}; falha (código de saída
+     * diferente de zero) no primeiro questionário inválido, interrompendo o build.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length % 2 != 0) {
+            throw new IllegalArgumentException("uso: QuestionnaireImage <questionnaire.json> <imagem> [<json> <imagem>...]");
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            Path source = Paths.get(args[i]);
+            Path image = Paths.get(args[i + 1]);
+            CompiledQuestionnaire graph = build(source, image);
+            log.info("questionnaire image {} -> {} ({} questions, max depth {}, {} bytes)",
+                    source, image, graph.size(), graph.maxDepth(), Files.size(image));
+        }
+    }
+
+    /**
+     * Lê, valida e compila o JSON e grava a imagem (arquivo temporário renomeado ao final).
+     */
+    public static CompiledQuestionnaire build(Path source, Path image) throws IOException {
+        byte[] json = Files.readAllBytes(source);
+        Questionnaire questionnaire = new ObjectMapper().readValue(json, Questionnaire.class);
+        QuestionnaireValidator.validate(questionnaire);
+        CompiledQuestionnaire graph = CompiledQuestionnaire.compile(questionnaire);
+        QuestionnaireValidator.validateStructure(graph);
+
+        Path parent = image.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path partial = image.resolveSibling(image.getFileName() + ".part");
+        Files.write(partial, write(graph, json.length, crc(ByteBuffer.wrap(json))));
+        Files.move(partial, image, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return graph;
+    }
+
+    /**
+     * Carrega a imagem mapeada em memória. Retorna null quando ela não existe ou não corresponde ao JSON
+     * de origem (quando este existe); imagens corrompidas ou de outro formato lançam
+     * {@link IllegalStateException}.
+     */
+    public static CompiledQuestionnaire load(Path image, Path source) throws IOException {
+        if (!Files.isRegularFile(image)) return null;
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return load(buffer, image, source);
+        }
+    }
+
+    /**
+     * Como {@link #load(Path, Path)}, para uma imagem do classpath: mapeada quando é um arquivo
+     * (classes do build), lida para a memória quando está dentro de um jar. Retorna null se não existir.
+     */
+    public static CompiledQuestionnaire loadResource(String resource, Path source) throws IOException {
+        URL url = QuestionnaireImage.class.getClassLoader().getResource(resource);
+        if (url == null) return null;
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return load(Paths.get(url.toURI()), source);
+            } catch (URISyntaxException e) {
+                throw new IOException("caminho inválido para a imagem " + url, e);
+            }
+        }
+        try (InputStream in = url.openStream()) {
+            return load(ByteBuffer.wrap(in.readAllBytes()), url, source);
+        }
+    }
+
+    private static CompiledQuestionnaire load(ByteBuffer buffer, Object image, Path source) throws IOException {
+        if (Files.isRegularFile(source) && !matches(buffer, source)) {
+            log.info("questionnaire image {} is stale for {}, loading the JSON", image, source);
+            return null;
+        }
+        return read(buffer);
+    }
+
+    private static boolean matches(ByteBuffer image, Path source) throws IOException {
+        if (image.capacity() < HEADER_BYTES || image.getInt(0) != MAGIC) return false;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (image.getLong(8) != length) return false;
+            return image.getInt(16) == crc(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        return (int) crc.getValue();
+    }
+
+    // ---------------------------------------------------------------- gravação
+
+    static byte[] write(CompiledQuestionnaire graph, long sourceLength, int sourceCrc) throws IOException {
+        Map<String, Integer> strings = new HashMap<>();
+        List<String> table = new ArrayList<>();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        body.writeInt(intern(strings, table, graph.getQuestionnaireId()));
+        for (int id = 0; id < graph.size(); id++) {
+            Question q = graph.question(id);
+            body.writeInt(intern(strings, table, q.getQuestionId()));
+            body.writeInt(intern(strings, table, q.getCode()));
+            body.writeInt(intern(strings, table, q.getDescription()));
+            body.writeInt(intern(strings, table, q.getCategoryCode()));
+            body.writeInt(intern(strings, table, q.getCategoryDescription()));
+            body.writeInt(intern(strings, table, q.getAnswerDataTypeDescription()));
+            body.writeInt((q.isMandatory() ? MANDATORY : 0) | (q.isCreditBooked() ? CREDIT_BOOKED : 0)
+                    | (q.isDocumentMandatory() ? DOCUMENT_MANDATORY : 0) | (q.isCommentMandatory() ? COMMENT_MANDATORY : 0));
+            body.writeInt(intern(strings, table, q.getChildQuestion() == null ? null : q.getChildQuestion().getCode()));
+            body.writeInt(q.getChildQuestion() == null ? 0 : 1);
+            writeAnswers(body, strings, table, q.getAnswers());
+            writeActions(body, strings, table, q.getNextActions());
+            if (q.getGuidance() == null) {
+                body.writeInt(NULL);
+            } else {
+                body.writeInt(q.getGuidance().size());
+                for (String g : q.getGuidance()) body.writeInt(intern(strings, table, g));
+            }
+        }
+
+        CompiledQuestionnaire.Precomputed pre = graph.precomputed();
+        body.writeInt(pre.reverseOrder().length);
+        for (int id : pre.reverseOrder()) body.writeInt(id);
+        for (BitSet set : pre.descendants()) {
+            long[] words = set.toLongArray();
+            body.writeInt(words.length);
+            for (long w : words) body.writeLong(w);
+        }
+        body.flush();
+
+        ByteArrayOutputStream imageBytes = new ByteArrayOutputStream(bodyBytes.size() + table.size() * 16 + HEADER_BYTES + 4);
+        DataOutputStream out = new DataOutputStream(imageBytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(sourceLength);
+        out.writeInt(sourceCrc);
+        out.writeInt(graph.fingerprint());
+        out.writeInt(graph.structureHash());
+        out.writeInt(graph.size());
+        out.writeInt(pre.maxDepth());
+        out.writeInt(table.size());
+        for (String s : table) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+        bodyBytes.writeTo(out);
+        out.flush();
+        out.writeInt(crc(ByteBuffer.wrap(imageBytes.toByteArray())));
+        return imageBytes.toByteArray();
+    }
+
+    private static void writeAnswers(DataOutputStream body, Map<String, Integer> strings, List<String> table,
+                                     List<Answer> answers) throws IOException {
+        if (answers == null) {
+            body.writeInt(NULL);
+            return;
+        }
+        body.writeInt(answers.size());
+        for (Answer a : answers) {
+            body.writeInt(intern(strings, table, a.getCode()));
+            body.writeInt(intern(strings, table, a.getDescription()));
+            body.writeInt(a.isCreditBooked() ? CREDIT_BOOKED : 0);
+            body.writeInt(intern(strings, table, a.getChildQuestion() == null ? null : a.getChildQuestion().getCode()));
+            body.writeInt(a.getChildQuestion() == null ? 0 : 1);
+            writeActions(body, strings, table, a.getNextActions());
+        }
+    }
+
+    private static void writeActions(DataOutputStream body, Map<String, Integer> strings, List<String> table,
+                                     List<NextAction> actions) throws IOException {
+        if (actions == null) {
+            body.writeInt(NULL);
+            return;
+        }
+        body.writeInt(actions.size());
+        for (NextAction a : actions) {
+            body.writeInt(intern(strings, table, a.getTypeCode()));
+            body.writeInt(intern(strings, table, a.getTypeDescription()));
+            body.writeInt(intern(strings, table, a.getValue()));
+        }
+    }
+
+    private static int intern(Map<String, Integer> strings, List<String> table, String value) {
+        if (value == null) return NULL;
+        return strings.computeIfAbsent(value, v -> {
+            table.add(v);
+            return table.size() - 1;
+        });
+    }
+
+    // ---------------------------------------------------------------- leitura
+
+    static CompiledQuestionnaire read(ByteBuffer buffer) {
+        ByteBuffer in = buffer.duplicate();
+        if (in.remaining() < HEADER_BYTES + 4 || in.getInt() != MAGIC) {
+            throw new IllegalStateException("Arquivo não é uma imagem de questionário");
+        }
+        int version = in.getInt();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalStateException("Versão de imagem não suportada: " + version + " (esperada " + FORMAT_VERSION + ")");
+        }
+        int end = in.limit() - 4;
+        if (crc(in.duplicate().position(0).limit(end)) != in.getInt(end)) {
+            throw new IllegalStateException("Imagem de questionário corrompida (CRC)");
+        }
+        in.getLong();   // tamanho do JSON de origem
+        in.getInt();    // CRC do JSON de origem
+        int fingerprint = in.getInt();
+        int structureHash = in.getInt();
+        int n = in.getInt();
+        int maxDepth = in.getInt();
+
+        String[] strings = new String[in.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] utf8 = new byte[in.getInt()];
+            in.get(utf8);
+            strings[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        Questionnaire questionnaire = new Questionnaire();
+        questionnaire.setQuestionnaireId(string(strings, in.getInt()));
+        List<Question> questions = new ArrayList<>(n);
+        for (int id = 0; id < n; id++) {
+            Question q = new Question();
+            q.setQuestionId(string(strings, in.getInt()));
+            q.setCode(string(strings, in.getInt()));
+            q.setDescription(string(strings, in.getInt()));
+            q.setCategoryCode(string(strings, in.getInt()));
+            q.setCategoryDescription(string(strings, in.getInt()));
+            q.setAnswerDataTypeDescription(string(strings, in.getInt()));
+            int flags = in.getInt();
+            q.setMandatory((flags & MANDATORY) != 0);
+            q.setCreditBooked((flags & CREDIT_BOOKED) != 0);
+            q.setDocumentMandatory((flags & DOCUMENT_MANDATORY) != 0);
+            q.setCommentMandatory((flags & COMMENT_MANDATORY) != 0);
+            q.setChildQuestion(child(strings, in.getInt(), in.getInt()));
+            q.setAnswers(readAnswers(in, strings));
+            q.setNextActions(readActions(in, strings));
+            int guidance = in.getInt();
+            if (guidance != NULL) {
+                List<String> lines = new ArrayList<>(guidance);
+                for (int i = 0; i < guidance; i++) lines.add(string(strings, in.getInt()));
+                q.setGuidance(lines);
+            }
+            questions.add(q);
+        }
+        questionnaire.setQuestions(questions);
+
+        int[] reverseOrder = new int[in.getInt()];
+        for (int i = 0; i < reverseOrder.length; i++) reverseOrder[i] = in.getInt();
+        BitSet[] descendants = new BitSet[n];
+        for (int id = 0; id < n; id++) {
+            long[] words = new long[in.getInt()];
+            in.asLongBuffer().get(words);
+            in.position(in.position() + words.length * Long.BYTES);
+            descendants[id] = BitSet.valueOf(words);
+        }
+        if (in.position() != end) throw new IllegalStateException("Imagem de questionário com tamanho inesperado");
+
+        CompiledQuestionnaire graph = CompiledQuestionnaire.compile(questionnaire,
+                new CompiledQuestionnaire.Precomputed(reverseOrder, descendants, maxDepth));
+        if (graph.fingerprint() != fingerprint || graph.structureHash() != structureHash) {
+            throw new IllegalStateException("Imagem de questionário inconsistente com o cabeçalho");
+        }
+        return graph;
+    }
+
+    private static List<Answer> readAnswers(ByteBuffer in, String[] strings) {
+        int count = in.getInt();
+        if (count == NULL) return null;
+        List<Answer> answers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Answer a = new Answer();
+            a.setCode(string(strings, in.getInt()));
+            a.setDescription(string(strings, in.getInt()));
+            a.setCreditBooked((in.getInt() & CREDIT_BOOKED) != 0);
+            a.setChildQuestion(child(strings, in.getInt(), in.getInt()));
+            a.setNextActions(readActions(in, strings));
+            answers.add(a);
+        }
+        return answers;
+    }
+
+    private static List<NextAction> readActions(ByteBuffer in, String[] strings) {
+        int count = in.getInt();
+        if (count == NULL) return null;
+        List<NextAction> actions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            NextAction a = new NextAction();
+            a.setTypeCode(string(strings, in.getInt()));
+            a.setTypeDescription(string(strings, in.getInt()));
+            a.setValue(string(strings, in.getInt()));
+            actions.add(a);
+        }
+        return actions;
+    }
+
+    /**
+     * childQuestion: presente (mesmo sem code) quando `present` é 1.
+     */
+    private static ChildQuestion child(String[] strings, int code, int present) {
+        if (present == 0) return null;
+        ChildQuestion child = new ChildQuestion();
+        child.setCode(string(strings, code));
+        return child;
+    }
+
+    private static String string(String[] strings, int index) {
+        return index == NULL ? null : strings[index];
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.question.service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Contadores de carga do questionário: quantidade de reloads aplicados e rejeitados e a duração
+ * da última leitura (parse do JSON ou mapeamento da imagem binária) e da última compilação
+ * (validação + montagem do grafo).
+ */
+public class QuestionnaireLoadStats {
+
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile long lastLoadNanos;
+    private volatile long lastCompileNanos;
+    private volatile boolean lastFromImage;
+    private volatile Instant lastReloadAt;
+
+    void recordSuccess(long loadNanos, long compileNanos, boolean fromImage) {
+        this.lastLoadNanos = loadNanos;
+        this.lastCompileNanos = compileNanos;
+        this.lastFromImage = fromImage;
+    }
+
+    void recordReload() {
+        reloads.incrementAndGet();
+        lastReloadAt = Instant.now();
+    }
+
+    void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public double getLastLoadMillis() {
+        return lastLoadNanos / 1_000_000.0;
+    }
+
+    public double getLastCompileMillis() {
+        return lastCompileNanos / 1_000_000.0;
+    }
+
+    /**
+     * Indica se a última carga usou a imagem binária em vez do JSON.
+     */
+    public boolean isLastFromImage() {
+        return lastFromImage;
+    }
+
+    public Instant getLastReloadAt() {
+        return lastReloadAt;
+    }
+}
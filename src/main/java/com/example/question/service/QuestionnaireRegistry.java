@@ -0,0 +1,126 @@
+package com.example.question.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Catálogo de questionários adicionais, carregados sob demanda a partir de `<dir>/<questionnaireId>.json`.
+ *
+ * Os grafos compilados ficam em um cache Caffeine (W-TinyLFU) limitado pela soma do tamanho em memória
+ * dos questionários ({@link CompiledQuestionnaire#footprint()}, que inclui os descendentes pré-calculados
+ * e cresce com o quadrado do número de perguntas), de modo que o consumo permanece estável mesmo com um catálogo grande:
+ * questionários pouco usados são descartados e recarregados do disco quando voltarem a ser pedidos.
+ */
+public class QuestionnaireRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(QuestionnaireRegistry.class);
+
+    // impede que o id do request seja usado para navegar fora do diretório
+    private static final Pattern VALID_ID = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+
+    /**
+     * Função de carga (leitura + validação + compilação) de um arquivo de definição.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        CompiledQuestionnaire load(Path file) throws IOException;
+    }
+
+    private final Path directory;
+    private final Loader loader;
+    private final Cache<String, CompiledQuestionnaire> cache;
+
+    public QuestionnaireRegistry(Path directory, long maxWeight, Loader loader) {
+        this.directory = directory;
+        this.loader = loader;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .<String, CompiledQuestionnaire>weigher((id, q) -> (int) Math.min(Integer.MAX_VALUE, Math.max(1, q.footprint())))
+                .recordStats()
+                .build();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Cache<String, CompiledQuestionnaire> getCache() {
+        return cache;
+    }
+
+    /**
+     * Retorna o questionário compilado com o id informado, carregando-o na primeira utilização.
+     * Retorna null quando não existe definição para o id. Ausências não são guardadas no cache: ids
+     * desconhecidos não ocupam espaço dos questionários compilados, e uma definição criada depois
+     * é encontrada já no próximo request.
+     */
+    public CompiledQuestionnaire get(String questionnaireId) {
+        if (questionnaireId == null || !VALID_ID.matcher(questionnaireId).matches()) return null;
+        return cache.get(questionnaireId, this::loadOrNull);
+    }
+
+    // null não é armazenado pelo Caffeine
+    private CompiledQuestionnaire loadOrNull(String questionnaireId) {
+        Path file = fileFor(questionnaireId);
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            CompiledQuestionnaire compiled = loader.load(file);
+            if (!questionnaireId.equals(compiled.getQuestionnaireId())) {
+                log.warn("questionnaire file {} declares questionnaireId {}, ignoring", file, compiled.getQuestionnaireId());
+                return null;
+            }
+            return compiled;
+        } catch (IOException | RuntimeException e) {
+            // definição inválida é tratada como inexistente até o arquivo ser corrigido
+            log.warn("questionnaire {} could not be loaded from {}", questionnaireId, file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Recarrega o questionário, caso esteja em memória, substituindo a entrada do cache de forma atômica.
+     * Definições inválidas são rejeitadas e a versão atual é mantida. Questionários que não estão
+     * em memória não são carregados: serão lidos na próxima utilização.
+     */
+    public boolean reload(String questionnaireId) {
+        if (cache.getIfPresent(questionnaireId) == null) return false;
+        Path file = fileFor(questionnaireId);
+        if (!Files.isRegularFile(file)) {
+            cache.invalidate(questionnaireId);
+            return true;
+        }
+        try {
+            CompiledQuestionnaire compiled = loader.load(file);
+            if (!questionnaireId.equals(compiled.getQuestionnaireId())) {
+                throw new IllegalStateException("questionnaireId " + compiled.getQuestionnaireId() + " não corresponde ao arquivo");
+            }
+            cache.put(questionnaireId, compiled);
+            log.info("questionnaire {} reloaded from {}", questionnaireId, file);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("questionnaire {} reload from {} rejected, keeping current version", questionnaireId, file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Extrai o id do questionário a partir do nome de arquivo `<id>.json`, ou null se não for uma definição.
+     */
+    public static String idFromFileName(Path fileName) {
+        String name = fileName.toString();
+        if (!name.endsWith(".json")) return null;
+        String id = name.substring(0, name.length() - ".json".length());
+        return VALID_ID.matcher(id).matches() ? id : null;
+    }
+
+    private Path fileFor(String questionnaireId) {
+        return directory.resolve(questionnaireId + ".json");
+    }
+}
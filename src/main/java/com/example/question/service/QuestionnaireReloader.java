@@ -0,0 +1,122 @@
+package com.example.question.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observa o diretório do arquivo de definição (e o diretório do {@link QuestionnaireRegistry}) com
+ * {@link WatchService} e dispara o reload dos questionários em uma thread própria, fora do caminho dos
+ * requests. Eventos em sequência (editores costumam gravar o arquivo em várias etapas) são agrupados
+ * por um pequeno intervalo de debounce.
+ */
+@Component
+public class QuestionnaireReloader {
+
+    private static final Logger log = LoggerFactory.getLogger(QuestionnaireReloader.class);
+
+    @Autowired
+    private QuestionnaireService questionnaireService;
+
+    @Value("${questionnaire.reload.enabled:true}")
+    private boolean enabled;
+
+    @Value("${questionnaire.reload.debounce-ms:250}")
+    private long debounceMillis;
+
+    private WatchService watchService;
+    private Thread worker;
+
+    private Path definitionFile;
+    private Path registryDir;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        definitionFile = questionnaireService.getDefinitionPath().toAbsolutePath();
+        registryDir = questionnaireService.getRegistry().getDirectory().toAbsolutePath();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(definitionFile.getParent());
+            if (Files.isDirectory(registryDir) && !registryDir.equals(definitionFile.getParent())) {
+                register(registryDir);
+            }
+        } catch (IOException e) {
+            log.warn("could not watch questionnaire definitions, hot reload disabled", e);
+            return;
+        }
+        worker = new Thread(this::watch, "questionnaire-reloader");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = new HashSet<>();
+                drain(watchService.take(), changed);
+                // debounce: absorve os eventos seguintes da mesma gravação
+                WatchKey next;
+                while ((next = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    drain(next, changed);
+                }
+                apply(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed.add(definitionFile);
+            } else {
+                changed.add(dir.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+
+    private void apply(Set<Path> changed) {
+        for (Path path : changed) {
+            if (path.equals(definitionFile)) {
+                questionnaireService.reload();
+            } else if (registryDir.equals(path.getParent())) {
+                String id = QuestionnaireRegistry.idFromFileName(path.getFileName());
+                if (id != null) questionnaireService.getRegistry().reload(id);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (worker != null) worker.interrupt();
+        if (watchService != null) watchService.close();
+    }
+}
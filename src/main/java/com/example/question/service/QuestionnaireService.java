@@ -1,45 +1,183 @@
 package com.example.question.service;
 
+import com.example.question.model.CompletedSession;
+import com.example.question.model.NextStepResponse;
 import com.example.question.model.Questionnaire;
-import com.example.question.model.Answer;
 import com.example.question.model.Question;
+import com.example.question.model.SessionState;
+import com.example.question.session.SessionChanges;
+import com.example.question.session.SessionStore;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
 @Service
 public class QuestionnaireService {
+
+    private static final Logger log = LoggerFactory.getLogger(QuestionnaireService.class);
+    private static final String CLASSPATH_PREFIX = "classpath:";
+
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private SessionStore sessionStore;
+
+    @Autowired
+    private StepMetrics stepMetrics;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Path definitionPath;
+    private final String imageLocation;
+    private final QuestionnaireLoadStats loadStats = new QuestionnaireLoadStats();
+    // cargas de arquivos do catálogo, separadas para não misturar com os tempos do questionário padrão
+    private final QuestionnaireLoadStats catalogLoadStats = new QuestionnaireLoadStats();
 
-    private Questionnaire questionnaire;
+    private final QuestionnaireRegistry registry;
 
-    public QuestionnaireService() {
+    // snapshot publicado; trocado atomicamente a cada reload
+    private volatile CompiledQuestionnaire current;
+
+    @Autowired
+    public QuestionnaireService(@Value("${questionnaire.file:questionnaire.json}") String definitionFile,
+                                @Value("${questionnaire.dir:questionnaires}") String definitionDir,
+                                @Value("${questionnaire.cache.max-weight:8000000}") long maxCachedWeight,
+                                @Value("${questionnaire.image:}") String imageFile) {
+        this.definitionPath = Paths.get(definitionFile);
+        this.imageLocation = imageFile.isBlank() ? null : imageFile;
+        this.registry = new QuestionnaireRegistry(Paths.get(definitionDir), maxCachedWeight, file -> loadSnapshot(file, catalogLoadStats));
         try {
-            ObjectMapper mapper = new ObjectMapper();
-            File file = new File("questionnaire.json");
-            this.questionnaire = mapper.readValue(new FileInputStream(file), Questionnaire.class);
-        } catch (IOException e) {
-            throw new RuntimeException("Erro ao carregar questionnaire.json da raiz do projeto", e);
+            this.current = loadSnapshot(definitionPath, loadStats);
+        } catch (IOException | RuntimeException e) {
+            throw new RuntimeException("Erro ao carregar " + definitionPath + " da raiz do projeto", e);
         }
     }
 
+    /**
+     * Lê, valida e compila um arquivo de definição, sem publicar o resultado. Quando existe a imagem
+     * binária gerada no build para o mesmo conteúdo ({@link QuestionnaireImage}), ela é mapeada e usada
+     * no lugar do JSON. Os tempos são registrados em `stats` apenas quando a carga é concluída.
+     */
+    private CompiledQuestionnaire loadSnapshot(Path file, QuestionnaireLoadStats stats) throws IOException {
+        long start = System.nanoTime();
+        CompiledQuestionnaire image = loadImage(file);
+        if (image != null) {
+            long mapped = System.nanoTime();
+            // a imagem só é gerada para definições válidas; a checagem aqui protege contra imagens adulteradas
+            QuestionnaireValidator.validate(image.getSource());
+            QuestionnaireValidator.validateStructure(image);
+            stats.recordSuccess(mapped - start, System.nanoTime() - mapped, true);
+            return image;
+        }
+        Questionnaire questionnaire;
+        try (InputStream in = Files.newInputStream(file)) {
+            questionnaire = mapper.readValue(in, Questionnaire.class);
+        }
+        long loaded = System.nanoTime();
+        QuestionnaireValidator.validate(questionnaire);
+        CompiledQuestionnaire compiled = CompiledQuestionnaire.compile(questionnaire);
+        QuestionnaireValidator.validateStructure(compiled);
+        stats.recordSuccess(loaded - start, System.nanoTime() - loaded, false);
+        return compiled;
+    }
+
+    /**
+     * Imagem da definição: {@code questionnaire.image} para o questionário padrão (um caminho ou
+     * {@code classpath:<recurso>}), ou o arquivo {@code <nome>.qimg} ao lado das demais definições.
+     */
+    private CompiledQuestionnaire loadImage(Path file) throws IOException {
+        if (imageLocation != null && file.equals(definitionPath)) {
+            return imageLocation.startsWith(CLASSPATH_PREFIX)
+                    ? QuestionnaireImage.loadResource(imageLocation.substring(CLASSPATH_PREFIX.length()), file)
+                    : QuestionnaireImage.load(Paths.get(imageLocation), file);
+        }
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return QuestionnaireImage.load(file.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + QuestionnaireImage.EXTENSION), file);
+    }
+
+    /**
+     * Recarrega o arquivo de definição e publica o novo snapshot com uma única troca de referência.
+     * Requests em andamento continuam usando o snapshot que obtiveram via {@link #snapshot()}.
+     * Em caso de erro o snapshot atual é mantido e retorna false.
+     */
+    public synchronized boolean reload() {
+        try {
+            CompiledQuestionnaire next = loadSnapshot(definitionPath, loadStats);
+            this.current = next;
+            loadStats.recordReload();
+            log.info("questionnaire reloaded from {} ({} questions, max depth {})", definitionPath, next.size(), next.maxDepth());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            loadStats.recordFailure();
+            log.warn("questionnaire reload from {} rejected, keeping current snapshot", definitionPath, e);
+            return false;
+        }
+    }
+
+    /**
+     * Retorna o snapshot compilado atual. Um request deve obtê-lo uma única vez e usá-lo até o fim,
+     * garantindo uma visão consistente mesmo que um reload ocorra no meio do processamento.
+     */
+    public CompiledQuestionnaire snapshot() {
+        return current;
+    }
+
+    /**
+     * Retorna o snapshot do questionário com o id informado. Sem id (ou com o id do questionário
+     * padrão) retorna o questionário padrão; demais ids são resolvidos no {@link QuestionnaireRegistry},
+     * que carrega a definição do diretório na primeira utilização. Retorna null para ids desconhecidos.
+     */
+    public CompiledQuestionnaire snapshot(String questionnaireId) {
+        CompiledQuestionnaire defaultSnapshot = current;
+        if (questionnaireId == null || questionnaireId.isBlank()
+                || questionnaireId.equals(defaultSnapshot.getQuestionnaireId())) {
+            return defaultSnapshot;
+        }
+        return registry.get(questionnaireId);
+    }
+
+    /**
+     * Catálogo de questionários carregados sob demanda.
+     */
+    public QuestionnaireRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Caminho do arquivo de definição do questionário.
+     */
+    public Path getDefinitionPath() {
+        return definitionPath;
+    }
+
+    /**
+     * Contadores e tempos de carga/compilação do questionário padrão.
+     */
+    public QuestionnaireLoadStats getLoadStats() {
+        return loadStats;
+    }
+
+    /**
+     * Tempos da última leitura de disco de um questionário do catálogo (acertos do cache não contam).
+     */
+    public QuestionnaireLoadStats getCatalogLoadStats() {
+        return catalogLoadStats;
+    }
+
     /**
      * Retorna o questionário carregado em memória.
      */
     public Questionnaire getQuestionnaire() {
-        return questionnaire;
+        return current.getSource();
     }
 
     /**
@@ -83,99 +221,19 @@ public class QuestionnaireService {
         return answersList;
     }
 
-    /**
-     * Salva o progresso bruto (payload) no Redis. Mantido por compatibilidade.
-     */
-    @SuppressWarnings("unchecked")
-    public void saveProgress(String sessionId, Object progress) {
-        if (!(progress instanceof Map)) return;
-        Map<String, Object> payload = (Map<String, Object>) progress;
-        Map<String, Object> questionnaireMap = (Map<String, Object>) payload.get("questionnaire");
-        if (questionnaireMap == null) return;
-
-        java.util.List<Map<String, Object>> answersList = normalizeAnswersFromQuestionnaireMap(questionnaireMap);
-
-        if (answersList == null || answersList.isEmpty()) {
-            clearProgress(sessionId);
-        } else {
-            redisTemplate.opsForValue().set(sessionId, progress);
-        }
-    }
-
-    /**
-     * Limpa o progresso salvo no cache para a sessão.
-     */
-    public void clearProgress(String sessionId) {
-        redisTemplate.delete(sessionId);
-    }
-
-    /**
-     * Recupera o payload salvo no Redis para a sessão, se existir.
-     */
-    public Optional<Object> getProgress(String sessionId) {
-        return Optional.ofNullable(redisTemplate.opsForValue().get(sessionId));
-    }
-
     /**
      * Busca uma pergunta pelo seu código (code) no questionário carregado.
      */
     public Question findQuestionByCode(String code) {
-        for (Question question : questionnaire.getQuestions()) {
-            if (question.getCode().equals(code)) {
-                return question;
-            }
-        }
-        return null;
+        return findQuestionByCode(current, code);
     }
 
-    // --- Métodos auxiliares para navegar e reconstruir o ramo respondido ---
-
-    /**
-     * Verifica recursivamente se a subtree iniciada em `code` contém alguma pergunta que esteja em `answeredCodes`.
-     * Utilizado para decidir se devemos incluir um nó ancestral no resumo mesmo quando ele não tem resposta direta.
-     */
-    private boolean subtreeContainsAnswered(String code, java.util.Set<String> answeredCodes) {
-        if (code == null) return false;
-        if (answeredCodes.contains(code)) return true;
-        Question q = findQuestionByCode(code);
-        if (q == null) return false;
-        if ("combo".equals(q.getAnswerDataTypeDescription()) || "boolean".equals(q.getAnswerDataTypeDescription())) {
-            if (q.getAnswers() == null) return false;
-            for (Answer a : q.getAnswers()) {
-                if (a.getChildQuestion() != null) {
-                    String childCode = a.getChildQuestion().getCode();
-                    if (subtreeContainsAnswered(childCode, answeredCodes)) return true;
-                }
-            }
-            return false;
-        } else {
-            if (q.getChildQuestion() == null) return false;
-            return subtreeContainsAnswered(q.getChildQuestion().getCode(), answeredCodes);
-        }
+    public Question findQuestionByCode(CompiledQuestionnaire graph, String code) {
+        int id = graph.idOf(code);
+        return id == CompiledQuestionnaire.NONE ? null : graph.question(id);
     }
 
-    /**
-     * Encontra o código do child (direto) que leva a uma pergunta respondida, caso exista.
-     * Retorna null caso não exista.
-     */
-    private String findChildLeadingToAnswered(Question q, java.util.Set<String> answeredCodes) {
-        if (q == null) return null;
-        if ("combo".equals(q.getAnswerDataTypeDescription()) || "boolean".equals(q.getAnswerDataTypeDescription())) {
-            if (q.getAnswers() == null) return null;
-            for (Answer a : q.getAnswers()) {
-                if (a.getChildQuestion() != null) {
-                    String childCode = a.getChildQuestion().getCode();
-                    if (subtreeContainsAnswered(childCode, answeredCodes)) return childCode;
-                }
-            }
-            return null;
-        } else {
-            if (q.getChildQuestion() == null) return null;
-            String childCode = q.getChildQuestion().getCode();
-            if (subtreeContainsAnswered(childCode, answeredCodes)) return childCode;
-            return null;
-        }
-    }
+    // --- Métodos auxiliares para navegar e reconstruir o ramo respondido ---
 
     /**
      * Reconstrói o ramo de perguntas válidas (respondidas ou necessárias para chegar até respostas)
@@ -183,61 +241,21 @@ public class QuestionnaireService {
      * Retorna uma lista de perguntas que compõem o ramo ativo.
      */
     public List<Question> getAnsweredBranch(List<Map<String, Object>> answers) {
-        List<Question> branch = new java.util.ArrayList<>();
-        if (answers == null || answers.isEmpty()) {
-            return branch;
-        }
-
-        java.util.Map<String, String> answerByQuestion = new java.util.HashMap<>();
-        java.util.Set<String> answeredCodes = new java.util.HashSet<>();
-        for (Map<String, Object> a : answers) {
-            Object qc = a.get("questionCode");
-            if (qc != null) {
-                Object val = a.get("value");
-                String key = String.valueOf(qc).trim();
-                answerByQuestion.put(key, val == null ? null : String.valueOf(val));
-                answeredCodes.add(key);
-            }
-        }
+        return getAnsweredBranch(current, answers);
+    }
 
-        if (questionnaire.getQuestions() == null || questionnaire.getQuestions().isEmpty()) return branch;
-        String currentCode = questionnaire.getQuestions().get(0).getCode();
-
-        int safety = 0;
-        while (currentCode != null && safety++ < 100) {
-            Question question = findQuestionByCode(currentCode);
-            if (question == null) break;
-
-            if (!answeredCodes.contains(currentCode) && !subtreeContainsAnswered(currentCode, answeredCodes)) break;
-
-            branch.add(question);
-
-            if (answeredCodes.contains(currentCode)) {
-                String value = answerByQuestion.get(currentCode);
-                String nextCode = null;
-                if ("combo".equals(question.getAnswerDataTypeDescription()) || "boolean".equals(question.getAnswerDataTypeDescription())) {
-                    if (value != null) {
-                        Answer selectedAnswer = question.getAnswers().stream()
-                                .filter(a -> a.getCode().equals(value))
-                                .findFirst()
-                                .orElse(null);
-                        if (selectedAnswer != null && selectedAnswer.getChildQuestion() != null) {
-                            nextCode = selectedAnswer.getChildQuestion().getCode();
-                        }
-                    }
-                } else {
-                    if (question.getChildQuestion() != null) {
-                        nextCode = question.getChildQuestion().getCode();
-                    }
-                }
-                currentCode = nextCode;
-            } else {
-                String nextCode = findChildLeadingToAnswered(question, answeredCodes);
-                currentCode = nextCode;
-            }
+    public List<Question> getAnsweredBranch(CompiledQuestionnaire graph, List<Map<String, Object>> answers) {
+        if (answers == null || answers.isEmpty()) {
+            return new java.util.ArrayList<>();
         }
+        return getAnsweredBranch(SessionAnswers.of(graph, answers));
+    }
 
-        return branch;
+    /**
+     * Ramo ativo navegado no questionário ao qual as respostas pertencem ({@link SessionAnswers#graph()}).
+     */
+    public List<Question> getAnsweredBranch(SessionAnswers answers) {
+        return BranchCursor.build(answers).questions();
     }
 
     /**
@@ -265,95 +283,107 @@ public class QuestionnaireService {
         return summary;
     }
 
+    /**
+     * Mesmo que {@link #buildAnsweredSummary(List, List)}, a partir das respostas indexadas e com entradas tipadas.
+     */
+    public List<NextStepResponse.SummaryEntry> buildSummary(SessionAnswers answers, List<Question> branch) {
+        long t = stepMetrics.start();
+        List<NextStepResponse.SummaryEntry> summary = new java.util.ArrayList<>(branch.size());
+        for (Question q : branch) {
+            summary.add(new NextStepResponse.SummaryEntry(q, answers.get(q.getCode() == null ? null : q.getCode().trim())));
+        }
+        stepMetrics.record(StepMetrics.Phase.SUMMARY, t);
+        return summary;
+    }
+
     /**
      * Valida se a resposta informada é compatível com o tipo de dado da pergunta.
      * Suporta: simple-text, simple-textarea, boolean, date, dateTime, amount, combo.
+     * Perguntas do snapshot atual usam a validação compilada na carga (ver {@link AnswerValidator}).
      */
-    @SuppressWarnings("unchecked")
     public boolean isValidAnswer(Question question, Map<String, Object> answer) {
-        String type = question.getAnswerDataTypeDescription();
-        Object value = answer.get("value");
+        CompiledQuestionnaire graph = current;
+        int id = graph.idOf(question.getCode());
+        AnswerValidator validator = id != CompiledQuestionnaire.NONE && graph.question(id) == question
+                ? graph.validator(id) : AnswerValidator.of(question);
+        return validator.check(answer.get("value")) == null;
+    }
 
-        if (value == null && question.isMandatory()) {
-            return false;
-        }
+    /**
+     * Recupera a lista de respostas atualmente salvas no Redis para a sessão (padronizado como List<Map<String,Object>>).
+     */
+    public List<Map<String, Object>> getSavedAnswers(String sessionId) {
+        SessionState saved = getSavedSession(sessionId);
+        return saved == null ? null : saved.getAnswers();
+    }
 
-        switch (type) {
-            case "simple-text":
-            case "simple-textarea":
-                return value instanceof String;
-
-            case "boolean":
-                if (!(value instanceof String)) return false;
-                String boolStr = (String) value;
-                return question.getAnswers().stream()
-                        .anyMatch(a -> a.getCode().equals(boolStr));
-
-            case "date":
-                if (!(value instanceof String)) return false;
-                try {
-                    LocalDate.parse((String) value);
-                    return true;
-                } catch (Exception e) {
-                    return false;
-                }
+    /**
+     * Recupera o estado salvo da sessão (questionnaireId + respostas), ou null se não existir.
+     */
+    public SessionState getSavedSession(String sessionId) {
+        return sessionStore.load(sessionId);
+    }
 
-            case "dateTime":
-                if (!(value instanceof String)) return false;
-                try {
-                    LocalDateTime.parse((String) value);
-                    return true;
-                } catch (Exception e) {
-                    return false;
-                }
+    /**
+     * Recupera o estado salvo de várias sessões em uma única ida ao Redis (valor null para sessões inexistentes).
+     */
+    public Map<String, SessionState> getSavedSessions(java.util.Collection<String> sessionIds) {
+        return sessionStore.loadAll(sessionIds);
+    }
 
-            case "amount":
-                if (!(value instanceof Map)) return false;
-                Map<String, Object> amountMap = (Map<String, Object>) value;
-                try {
-                    new BigDecimal(amountMap.get("amount").toString());
-                    return amountMap.containsKey("currency");
-                } catch (Exception e) {
-                    return false;
-                }
+    /**
+     * Recupera o estado salvo da sessão trazendo ao menos as respostas das perguntas informadas.
+     * Dependendo do modo de armazenamento o estado retornado pode ser parcial (ver {@link SessionState#isComplete()}).
+     */
+    public SessionState getSavedSession(String sessionId, java.util.Collection<String> questionCodes) {
+        return sessionStore.load(sessionId, questionCodes);
+    }
 
-            case "combo":
-                if (!(value instanceof String)) return false;
-                String comboValue = (String) value;
-                return question.getAnswers().stream()
-                        .anyMatch(a -> a.getCode().equals(comboValue));
+    /**
+     * Salva a lista padronizada de respostas no Redis (substitui o valor existente).
+     */
+    public void saveAnswersList(String sessionId, String questionnaireId, List<Map<String, Object>> answersList) {
+        sessionStore.save(sessionId, questionnaireId, answersList, SessionChanges.replaceAll(answersList));
+    }
 
-            default:
-                return false;
-        }
+    /**
+     * Salva um passo da sessão: `merged` é o estado resultante e `changes` o que mudou desde a leitura.
+     * Retorna false quando a sessão foi alterada por outra requisição depois da leitura (versão diferente).
+     */
+    public boolean saveSession(String sessionId, String questionnaireId, List<Map<String, Object>> merged, SessionChanges changes) {
+        long t = stepMetrics.start();
+        boolean saved = sessionStore.save(sessionId, questionnaireId, merged, changes);
+        stepMetrics.record(StepMetrics.Phase.SAVE, t);
+        // com estado parcial `merged` não tem todas as respostas da sessão
+        if (saved && changes.isMergedComplete()) stepMetrics.answers(merged.size());
+        return saved;
     }
 
     /**
-     * Recupera a lista de respostas atualmente salvas no Redis para a sessão (padronizado como List<Map<String,Object>>).
+     * Compacta a sessão concluída: guarda apenas as respostas do ramo percorrido em um registro com
+     * retenção própria ({@code session.ttl.completed}) e remove o estado vivo, desde que a sessão ainda
+     * esteja em `expectedVersion`. Retorna false em conflito, como {@link #saveSession}.
      */
-    @SuppressWarnings("unchecked")
-    public List<Map<String, Object>> getSavedAnswers(String sessionId) {
-        Object saved = redisTemplate.opsForValue().get(sessionId);
-        if (!(saved instanceof Map)) return null;
-        Map<?, ?> m = (Map<?, ?>) saved;
-        Object q = m.get("questionnaire");
-        if (!(q instanceof Map)) return null;
-        Map<?, ?> qm = (Map<?, ?>) q;
-        Object answers = qm.get("answers");
-        if (!(answers instanceof List)) return null;
-        return (List<Map<String, Object>>) answers;
+    public boolean completeSession(String sessionId, long expectedVersion, String questionnaireId, SessionAnswers answers, List<Question> branch) {
+        long t = stepMetrics.start();
+        List<Map<String, Object>> branchAnswers = new java.util.ArrayList<>(branch.size());
+        for (Question q : branch) {
+            java.util.Map<String, Object> m = new java.util.HashMap<>(4);
+            m.put("questionCode", q.getCode());
+            m.put("value", answers.get(q.getCode()));
+            branchAnswers.add(m);
+        }
+        boolean completed = sessionStore.complete(sessionId, expectedVersion,
+                new CompletedSession(questionnaireId, System.currentTimeMillis(), branchAnswers));
+        stepMetrics.record(StepMetrics.Phase.COMPLETE, t);
+        return completed;
     }
 
     /**
-     * Salva a lista padronizada de respostas no Redis (substitui o valor existente).
+     * Recupera o registro compacto de uma sessão concluída, se existir.
      */
-    public void saveAnswersList(String sessionId, String questionnaireId, List<Map<String, Object>> answersList) {
-        java.util.Map<String, Object> toSave = new java.util.HashMap<>();
-        java.util.Map<String, Object> inner = new java.util.HashMap<>();
-        inner.put("questionnaireId", questionnaireId);
-        inner.put("answers", answersList);
-        toSave.put("questionnaire", inner);
-        redisTemplate.opsForValue().set(sessionId, toSave);
+    public CompletedSession getCompletedSession(String sessionId) {
+        return sessionStore.loadCompleted(sessionId);
     }
 
     /**
@@ -361,18 +391,15 @@ public class QuestionnaireService {
      * Retorna null quando a resposta leva ao fim do fluxo (sem childQuestion).
      */
     public String getNextQuestionCodeForAnswer(String questionCode, Object valueObj) {
+        return getNextQuestionCodeForAnswer(current, questionCode, valueObj);
+    }
+
+    public String getNextQuestionCodeForAnswer(CompiledQuestionnaire graph, String questionCode, Object valueObj) {
         if (questionCode == null) return null;
-        Question question = findQuestionByCode(questionCode);
-        if (question == null) return null;
+        int id = graph.idOf(questionCode);
+        if (id == CompiledQuestionnaire.NONE) return null;
         String value = valueObj == null ? null : String.valueOf(valueObj);
-        if ("combo".equals(question.getAnswerDataTypeDescription()) || "boolean".equals(question.getAnswerDataTypeDescription())) {
-            if (value == null) return null;
-            Answer selected = question.getAnswers().stream().filter(a -> a.getCode().equals(value)).findFirst().orElse(null);
-            if (selected == null) return null;
-            return selected.getChildQuestion() == null ? null : selected.getChildQuestion().getCode();
-        } else {
-            return question.getChildQuestion() == null ? null : question.getChildQuestion().getCode();
-        }
+        return graph.nextCode(id, value);
     }
 
     /**
@@ -380,29 +407,16 @@ public class QuestionnaireService {
      * Útil para identificar quais respostas devem ser descartadas quando um nó do fluxo muda.
      */
     public java.util.Set<String> collectSubtreeCodes(String startCode) {
-        java.util.Set<String> result = new java.util.LinkedHashSet<>();
-        if (startCode == null) return result;
-        collectSubtreeDfs(startCode, result);
-        return result;
+        return collectSubtreeCodes(current, startCode);
     }
 
-    private void collectSubtreeDfs(String code, java.util.Set<String> acc) {
-        if (code == null) return;
-        if (acc.contains(code)) return; // evita ciclos
-        Question q = findQuestionByCode(code);
-        if (q == null) return;
-        acc.add(code);
-        if ("combo".equals(q.getAnswerDataTypeDescription()) || "boolean".equals(q.getAnswerDataTypeDescription())) {
-            if (q.getAnswers() == null) return;
-            for (Answer a : q.getAnswers()) {
-                if (a.getChildQuestion() != null) {
-                    String child = a.getChildQuestion().getCode();
-                    collectSubtreeDfs(child, acc);
-                }
-            }
-        } else {
-            if (q.getChildQuestion() == null) return;
-            collectSubtreeDfs(q.getChildQuestion().getCode(), acc);
+    public java.util.Set<String> collectSubtreeCodes(CompiledQuestionnaire graph, String startCode) {
+        java.util.Set<String> result = new java.util.LinkedHashSet<>();
+        if (startCode == null) return result;
+        java.util.BitSet subtree = graph.subtree(graph.idOf(startCode));
+        for (int id = subtree.nextSetBit(0); id >= 0; id = subtree.nextSetBit(id + 1)) {
+            result.add(graph.code(id));
         }
+        return result;
     }
 }
@@ -0,0 +1,63 @@
+package com.example.question.service;
+
+import com.example.question.model.Question;
+import com.example.question.model.Questionnaire;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Validações estruturais aplicadas antes de publicar um questionário compilado.
+ * Lança {@link IllegalStateException} descrevendo o primeiro problema encontrado.
+ */
+public final class QuestionnaireValidator {
+
+    private QuestionnaireValidator() {
+    }
+
+    public static void validate(Questionnaire questionnaire) {
+        if (questionnaire == null) {
+            throw new IllegalStateException("Questionário vazio");
+        }
+        if (questionnaire.getQuestions() == null || questionnaire.getQuestions().isEmpty()) {
+            throw new IllegalStateException("Questionário " + questionnaire.getQuestionnaireId() + " não possui perguntas");
+        }
+        Set<String> codes = new HashSet<>();
+        for (Question q : questionnaire.getQuestions()) {
+            if (q.getCode() == null || q.getCode().isBlank()) {
+                throw new IllegalStateException("Pergunta sem code no questionário " + questionnaire.getQuestionnaireId());
+            }
+            if (q.getCode().startsWith("__")) {
+                // prefixo reservado para campos internos da sessão
+                throw new IllegalStateException("Code de pergunta não pode começar com '__': " + q.getCode());
+            }
+            if (!codes.add(q.getCode())) {
+                throw new IllegalStateException("Code de pergunta duplicado: " + q.getCode());
+            }
+            if (q.getAnswerDataTypeDescription() == null) {
+                throw new IllegalStateException("Pergunta " + q.getCode() + " sem answerDataTypeDescription");
+            }
+        }
+    }
+
+    /**
+     * Validações do grafo compilado: filhos inexistentes, ciclos e perguntas inalcançáveis a partir do
+     * root. Com o grafo acíclico, todo percurso termina em no máximo {@link CompiledQuestionnaire#maxDepth()}
+     * passos, sem limite fixo de profundidade.
+     */
+    public static void validateStructure(CompiledQuestionnaire graph) {
+        String id = graph.getQuestionnaireId();
+        List<String> dangling = graph.danglingReferences();
+        if (!dangling.isEmpty()) {
+            throw new IllegalStateException("Questionário " + id + " referencia perguntas inexistentes: " + dangling);
+        }
+        if (!graph.isAcyclic()) {
+            throw new IllegalStateException("Questionário " + id + " possui ciclo: " + String.join(" -> ", graph.findCycle()));
+        }
+        List<String> unreachable = graph.unreachable();
+        if (!unreachable.isEmpty()) {
+            throw new IllegalStateException("Questionário " + id + " possui perguntas inalcançáveis a partir do root: " + unreachable);
+        }
+    }
+}
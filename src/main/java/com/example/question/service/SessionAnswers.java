@@ -0,0 +1,176 @@
+package com.example.question.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Respostas de uma sessão indexadas pelo id interno das perguntas de um {@link CompiledQuestionnaire}.
+ *
+ * Substitui os mapas questionCode -> value montados a cada passo: o código é resolvido uma única vez
+ * para o id (mesma instância de String do grafo) e consultas, poda de subtree e reconstrução do ramo
+ * trabalham sobre arrays e {@link BitSet}. Códigos que não existem no questionário são preservados à
+ * parte, como no formato original, para não perder dados salvos.
+ *
+ * Não é thread-safe: uma instância pertence a um único request.
+ */
+public final class SessionAnswers {
+
+    private final CompiledQuestionnaire graph;
+    private final Object[] values;
+    private final BitSet answered;
+
+    // ordem de inclusão dos ids (para gravar na mesma ordem em que foram respondidos)
+    private int[] order;
+    private int orderSize;
+    private final BitSet ordered;
+
+    // ids incluídos, alterados ou removidos desde a leitura (para atualizar o ramo incrementalmente)
+    private final BitSet changed;
+
+    // respostas para códigos fora do questionário (raro; alocado sob demanda)
+    private Map<String, Object> unknown;
+
+    public SessionAnswers(CompiledQuestionnaire graph) {
+        this.graph = graph;
+        this.values = new Object[graph.size()];
+        this.answered = new BitSet(graph.size());
+        this.ordered = new BitSet(graph.size());
+        this.changed = new BitSet(graph.size());
+        this.order = new int[Math.min(graph.size(), 16)];
+    }
+
+    /**
+     * Indexa uma lista no formato padronizado [{questionCode, value}, ...] (null equivale a vazia).
+     */
+    public static SessionAnswers of(CompiledQuestionnaire graph, List<Map<String, Object>> answers) {
+        SessionAnswers result = new SessionAnswers(graph);
+        if (answers != null) {
+            for (Map<String, Object> a : answers) {
+                Object qc = a.get("questionCode");
+                if (qc != null) result.put(String.valueOf(qc).trim(), a.get("value"));
+            }
+        }
+        result.changed.clear();
+        return result;
+    }
+
+    public CompiledQuestionnaire graph() {
+        return graph;
+    }
+
+    public boolean isEmpty() {
+        return answered.isEmpty() && (unknown == null || unknown.isEmpty());
+    }
+
+    public boolean has(int id) {
+        return id != CompiledQuestionnaire.NONE && answered.get(id);
+    }
+
+    public Object get(int id) {
+        return id == CompiledQuestionnaire.NONE ? null : values[id];
+    }
+
+    /**
+     * Valor da resposta como String, no formato usado para navegar (null quando não respondida).
+     */
+    public String valueString(int id) {
+        Object value = get(id);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    public boolean has(String code) {
+        int id = graph.idOf(code);
+        return id != CompiledQuestionnaire.NONE ? answered.get(id) : unknown != null && unknown.containsKey(code);
+    }
+
+    public Object get(String code) {
+        int id = graph.idOf(code);
+        return id != CompiledQuestionnaire.NONE ? values[id] : unknown == null ? null : unknown.get(code);
+    }
+
+    /**
+     * Inclui ou substitui a resposta. Retorna false quando a pergunta já tinha exatamente esse valor.
+     */
+    public boolean put(String code, Object value) {
+        int id = graph.idOf(code);
+        if (id != CompiledQuestionnaire.NONE) return put(id, value);
+        if (unknown == null) unknown = new LinkedHashMap<>();
+        boolean existed = unknown.containsKey(code);
+        Object previous = unknown.put(code, value);
+        return !existed || !Objects.equals(previous, value);
+    }
+
+    public boolean put(int id, Object value) {
+        if (answered.get(id) && Objects.equals(values[id], value)) return false;
+        values[id] = value;
+        answered.set(id);
+        changed.set(id);
+        if (!ordered.get(id)) {
+            ordered.set(id);
+            if (orderSize == order.length) order = Arrays.copyOf(order, Math.max(4, orderSize * 2));
+            order[orderSize++] = id;
+        }
+        return true;
+    }
+
+    /**
+     * Ids das perguntas respondidas. O BitSet retornado é interno e não deve ser alterado.
+     */
+    public BitSet answeredIds() {
+        return answered;
+    }
+
+    /**
+     * Ids incluídos, alterados ou removidos desde a leitura. O BitSet retornado é interno e não deve ser alterado.
+     */
+    public BitSet changedIds() {
+        return changed;
+    }
+
+    /**
+     * Remove as respostas da subtree iniciada em `rootId` e retorna os códigos removidos.
+     */
+    public List<String> clearSubtree(int rootId) {
+        if (rootId == CompiledQuestionnaire.NONE) return Collections.emptyList();
+        BitSet removed = graph.subtree(rootId);
+        removed.and(answered);
+        if (removed.isEmpty()) return Collections.emptyList();
+        List<String> codes = new ArrayList<>(removed.cardinality());
+        for (int id = removed.nextSetBit(0); id >= 0; id = removed.nextSetBit(id + 1)) {
+            codes.add(graph.code(id));
+            values[id] = null;
+        }
+        answered.andNot(removed);
+        changed.or(removed);
+        return codes;
+    }
+
+    /**
+     * Converte para o formato padronizado de armazenamento [{questionCode, value}, ...], na ordem de inclusão.
+     */
+    public List<Map<String, Object>> toList() {
+        List<Map<String, Object>> list = new ArrayList<>(answered.cardinality() + (unknown == null ? 0 : unknown.size()));
+        for (int i = 0; i < orderSize; i++) {
+            int id = order[i];
+            if (answered.get(id)) list.add(entry(graph.code(id), values[id]));
+        }
+        if (unknown != null) {
+            for (Map.Entry<String, Object> e : unknown.entrySet()) list.add(entry(e.getKey(), e.getValue()));
+        }
+        return list;
+    }
+
+    private static Map<String, Object> entry(String code, Object value) {
+        Map<String, Object> m = new HashMap<>(4);
+        m.put("questionCode", code);
+        m.put("value", value);
+        return m;
+    }
+}
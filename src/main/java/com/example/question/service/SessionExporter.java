@@ -0,0 +1,344 @@
+package com.example.question.service;
+
+import com.example.question.model.CompletedSession;
+import com.example.question.model.NextAction;
+import com.example.question.model.Question;
+import com.example.question.model.SessionState;
+import com.example.question.session.SessionStore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Exportação dos resumos de todas as sessões (em andamento e concluídas) para o processamento de crédito,
+ * em NDJSON (uma sessão por linha) ou CSV (uma pergunta do ramo por linha).
+ *
+ * As chaves são percorridas com {@code SCAN} em blocos de {@code export.batch-size}
+ * ({@link SessionStore#scanIds}); cada bloco é lido em uma única ida ao Redis (MGET/pipeline) e resumido
+ * por um pool de {@code export.parallelism} workers. No máximo duas vezes esse número de blocos fica em
+ * andamento: a varredura só avança quando o bloco mais antigo é escrito, então um consumidor lento
+ * desacelera as leituras em vez de acumular sessões na memória. A saída segue a ordem da varredura.
+ *
+ * Com {@code export.cron} a exportação também roda agendada, gravando em {@code export.directory}.
+ */
+@Component
+public class SessionExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionExporter.class);
+
+    private static final byte[] CSV_HEADER =
+            "sessionId,status,questionnaireId,completedAt,questionCode,answer,creditBooked,nextActions\n"
+                    .getBytes(StandardCharsets.UTF_8);
+    private static final DateTimeFormatter FILE_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    public enum Format {
+        NDJSON, CSV;
+
+        public static Format parse(String value) {
+            for (Format f : values()) {
+                if (f.name().equalsIgnoreCase(value)) return f;
+            }
+            return null;
+        }
+
+        public String extension() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Quais sessões exportar: todas, apenas as em andamento ou apenas as concluídas.
+     */
+    public enum Scope {
+        ALL, IN_PROGRESS, COMPLETED;
+
+        public static Scope parse(String value) {
+            for (Scope s : values()) {
+                if (s.name().equalsIgnoreCase(value)) return s;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Totais de uma exportação: sessões escritas e sessões ignoradas (questionário desconhecido).
+     */
+    public record Result(long sessions, long skipped) {
+    }
+
+    private record Chunk(byte[] bytes, int sessions, int skipped) {
+    }
+
+    @Autowired
+    private QuestionnaireService questionnaireService;
+
+    @Autowired
+    private SessionStore sessionStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${export.batch-size:500}")
+    private int batchSize;
+
+    // 0 = um worker por core
+    @Value("${export.parallelism:0}")
+    private int parallelism;
+
+    // "-" desativa a exportação agendada
+    @Value("${export.cron:-}")
+    private String cron;
+
+    @Value("${export.directory:exports}")
+    private String directory;
+
+    @Value("${export.format:ndjson}")
+    private String scheduledFormat;
+
+    private ThreadPoolTaskExecutor workers;
+    private ThreadPoolTaskScheduler scheduler;
+    private int window;
+
+    @PostConstruct
+    void start() {
+        int size = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        window = size * 2;
+        workers = new ThreadPoolTaskExecutor();
+        workers.setCorePoolSize(size);
+        workers.setMaxPoolSize(size);
+        workers.setThreadNamePrefix("export-");
+        workers.initialize();
+        if (!"-".equals(cron)) {
+            scheduler = new ThreadPoolTaskScheduler();
+            scheduler.setPoolSize(1);
+            scheduler.setThreadNamePrefix("export-schedule-");
+            scheduler.initialize();
+            scheduler.schedule(this::exportScheduled, new CronTrigger(cron));
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (scheduler != null) scheduler.shutdown();
+        workers.shutdown();
+    }
+
+    /**
+     * Escreve os resumos em `out` à medida que os blocos ficam prontos. O chamador fecha o stream.
+     */
+    public Result export(OutputStream out, Format format, Scope scope) throws IOException {
+        Deque<Future<Chunk>> inFlight = new ArrayDeque<>(window);
+        long[] totals = new long[2];
+        if (format == Format.CSV) out.write(CSV_HEADER);
+        try {
+            if (scope != Scope.COMPLETED) scan(false, format, out, inFlight, totals);
+            if (scope != Scope.IN_PROGRESS) scan(true, format, out, inFlight, totals);
+            while (!inFlight.isEmpty()) write(out, inFlight.poll(), totals);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            // falha no meio: os blocos ainda pendentes são descartados
+            for (Future<Chunk> pending : inFlight) pending.cancel(true);
+        }
+        out.flush();
+        return new Result(totals[0], totals[1]);
+    }
+
+    private void scan(boolean completed, Format format, OutputStream out, Deque<Future<Chunk>> inFlight, long[] totals) {
+        sessionStore.scanIds(completed, batchSize, batch -> {
+            try {
+                // janela cheia: espera o bloco mais antigo antes de ler mais sessões
+                while (inFlight.size() >= window) write(out, inFlight.poll(), totals);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            List<String> ids = List.copyOf(batch);
+            inFlight.add(workers.submit(() -> render(ids, completed, format)));
+        });
+    }
+
+    private void write(OutputStream out, Future<Chunk> pending, long[] totals) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Exportação interrompida", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        out.write(chunk.bytes());
+        totals[0] += chunk.sessions();
+        totals[1] += chunk.skipped();
+    }
+
+    /**
+     * Lê um bloco de sessões e renderiza as linhas (executado pelos workers).
+     */
+    private Chunk render(List<String> ids, boolean completed, Format format) throws JsonProcessingException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(ids.size() * 256);
+        int sessions = 0;
+        int skipped = 0;
+        if (completed) {
+            Map<String, CompletedSession> records = sessionStore.loadAllCompleted(ids);
+            for (String id : ids) {
+                CompletedSession record = records.get(id);
+                if (record == null) continue;
+                if (append(buffer, format, id, "completed", record.getQuestionnaireId(), record.getCompletedAt(), record.getAnswers())) sessions++;
+                else skipped++;
+            }
+        } else {
+            Map<String, SessionState> states = sessionStore.loadAll(ids);
+            for (String id : ids) {
+                SessionState state = states.get(id);
+                if (state == null) continue;
+                if (append(buffer, format, id, "in_progress", state.getQuestionnaireId(), 0, state.getAnswers())) sessions++;
+                else skipped++;
+            }
+        }
+        return new Chunk(buffer.toByteArray(), sessions, skipped);
+    }
+
+    /**
+     * Resumo de uma sessão: o ramo ativo reconstruído pelas respostas, com a resposta, isCreditBooked e
+     * nextActions de cada pergunta. Retorna false quando o questionário da sessão não é conhecido.
+     */
+    private boolean append(ByteArrayOutputStream buffer, Format format, String sessionId, String status,
+                           String questionnaireId, long completedAt, List<Map<String, Object>> answerList) throws JsonProcessingException {
+        CompiledQuestionnaire graph = questionnaireService.snapshot(questionnaireId);
+        if (graph == null) return false;
+        SessionAnswers answers = SessionAnswers.of(graph, answerList);
+        List<Question> branch = answers.isEmpty() ? List.of() : questionnaireService.getAnsweredBranch(answers);
+        String completedAtText = completedAt > 0 ? Instant.ofEpochMilli(completedAt).toString() : null;
+
+        if (format == Format.CSV) {
+            for (Question q : branch) {
+                StringBuilder line = new StringBuilder(128);
+                csv(line, sessionId).append(',').append(status).append(',');
+                csv(line, graph.getQuestionnaireId()).append(',');
+                if (completedAtText != null) line.append(completedAtText);
+                line.append(',');
+                csv(line, q.getCode()).append(',');
+                Object answer = answers.get(q.getCode());
+                if (answer != null) csv(line, answer instanceof String s ? s : objectMapper.writeValueAsString(answer));
+                line.append(',').append(q.isCreditBooked()).append(',');
+                csv(line, nextActions(q.getNextActions())).append('\n');
+                buffer.writeBytes(line.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return true;
+        }
+
+        boolean creditBooked = false;
+        List<Map<String, Object>> summary = new ArrayList<>(branch.size());
+        for (Question q : branch) {
+            Object answer = answers.get(q.getCode());
+            creditBooked |= q.isCreditBooked() && answer != null;
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("questionCode", q.getCode());
+            entry.put("answer", answer);
+            entry.put("creditBooked", q.isCreditBooked());
+            if (q.getNextActions() != null && !q.getNextActions().isEmpty()) entry.put("nextActions", q.getNextActions());
+            summary.add(entry);
+        }
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("sessionId", sessionId);
+        row.put("status", status);
+        row.put("questionnaireId", graph.getQuestionnaireId());
+        if (completedAtText != null) row.put("completedAt", completedAtText);
+        row.put("creditBooked", creditBooked);
+        row.put("summary", summary);
+        buffer.writeBytes(objectMapper.writeValueAsBytes(row));
+        buffer.write('\n');
+        return true;
+    }
+
+    /**
+     * typeCode:value das próximas ações, separados por '|'.
+     */
+    private static String nextActions(List<NextAction> actions) {
+        if (actions == null || actions.isEmpty()) return "";
+        StringBuilder sb = new StringBuilder();
+        for (NextAction a : actions) {
+            if (sb.length() > 0) sb.append('|');
+            sb.append(a.getTypeCode()).append(':').append(a.getValue() == null ? "" : a.getValue());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Campo CSV (RFC 4180): entre aspas quando contém separador, aspas ou quebra de linha.
+     */
+    static StringBuilder csv(StringBuilder line, String value) {
+        if (value == null) return line;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) return line.append(value);
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    /**
+     * Exportação agendada: grava em um arquivo temporário e o renomeia ao concluir, para que o
+     * processamento seguinte nunca leia um arquivo pela metade.
+     */
+    private void exportScheduled() {
+        Format format = Format.parse(scheduledFormat);
+        if (format == null) format = Format.NDJSON;
+        try {
+            Path dir = Paths.get(directory);
+            Files.createDirectories(dir);
+            Path target = dir.resolve("sessions-" + LocalDateTime.now().format(FILE_STAMP) + "." + format.extension());
+            Path partial = dir.resolve(target.getFileName() + ".part");
+            long start = System.nanoTime();
+            Result result;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial), 1 << 16)) {
+                result = export(out, format, Scope.ALL);
+            }
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.info("session export to {}: {} sessions ({} skipped) in {} ms", target, result.sessions(), result.skipped(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.warn("scheduled session export failed", e);
+        }
+    }
+}
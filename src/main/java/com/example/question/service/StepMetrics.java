@@ -0,0 +1,90 @@
+package com.example.question.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas do passo de /question_next_step, expostas pelo Actuator (/actuator/prometheus).
+ *
+ * {@code question.step.phase} é um timer por fase (tag {@code phase}), para localizar onde um passo
+ * lento gasta o tempo; os meters são registrados uma única vez e o registro de uma fase é apenas a
+ * diferença de {@link System#nanoTime()} desde {@link #start()}. A latência de cada comando Redis
+ * vem das métricas do Lettuce ({@code lettuce.command.*}).
+ */
+@Component
+public class StepMetrics {
+
+    public enum Phase {
+        NORMALIZE,          // leitura das respostas recebidas (answers ou comboQuestions)
+        VALIDATE,           // validação das respostas recebidas contra as perguntas
+        LOAD,               // leitura do estado da sessão no Redis
+        FLOW_DETECTION,     // detecção de edição que muda o fluxo
+        PRUNE,              // poda da subtree do ramo anterior
+        MERGE,              // aplicação das respostas recebidas
+        BRANCH,             // atualização (ou reconstrução) do ramo ativo
+        SAVE,               // gravação do passo no Redis
+        SUMMARY,            // montagem do resumo no fim do fluxo
+        COMPLETE,           // compactação da sessão concluída
+        RENDER              // resposta com a próxima pergunta
+    }
+
+    private final Map<Phase, Timer> phases = new EnumMap<>(Phase.class);
+    private final Counter flowChanges;
+    private final Counter prunedAnswers;
+    private final DistributionSummary payloadBytes;
+    private final DistributionSummary answersPerSession;
+
+    public StepMetrics(MeterRegistry registry) {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, Timer.builder("question.step.phase")
+                    .description("Tempo de cada fase do passo de /question_next_step")
+                    .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                    .register(registry));
+        }
+        this.flowChanges = Counter.builder("question.step.flow.changes")
+                .description("Edições que mudaram o fluxo (com poda do ramo anterior)")
+                .register(registry);
+        this.prunedAnswers = Counter.builder("question.step.pruned.answers")
+                .description("Respostas removidas por poda")
+                .register(registry);
+        this.payloadBytes = DistributionSummary.builder("session.payload.bytes")
+                .description("Bytes de sessão enviados ao Redis por gravação")
+                .baseUnit("bytes")
+                .register(registry);
+        this.answersPerSession = DistributionSummary.builder("session.answers")
+                .description("Respostas na sessão após cada gravação")
+                .register(registry);
+    }
+
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Registra a fase como o tempo decorrido desde `startNanos` (obtido de {@link #start()}).
+     */
+    public void record(Phase phase, long startNanos) {
+        phases.get(phase).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void flowChanged(int pruned) {
+        flowChanges.increment();
+        prunedAnswers.increment(pruned);
+    }
+
+    public void payload(int bytes) {
+        payloadBytes.record(bytes);
+    }
+
+    public void answers(int count) {
+        answersPerSession.record(count);
+    }
+}
@@ -0,0 +1,338 @@
+package com.example.question.session;
+
+import com.example.question.model.SessionState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Formato binário compacto da sessão.
+ *
+ * <pre>
+ * MAGIC(0xB5) VERSION(1) questionnaireId:string fingerprint:int32 count:varint
+ * entry* = questionRef:varint [code:string se ref == 0] value
+ * [path = structure:int32 count:varint questionRef*]   (opcional; leitores antigos ignoram o final)
+ * </pre>
+ *
+ * Perguntas são gravadas como id+1 (varint) contra a tabela de códigos da versão do questionário
+ * ({@link SessionSymbols}); respostas de combo/boolean como o índice da resposta; datas, data/hora,
+ * valores monetários e booleanos com codificações próprias. Qualquer outro valor cai em JSON.
+ * Valores que começam com '{' são sessões no formato JSON legado e são lidos pelo {@link JsonSessionCodec}.
+ */
+public class BinarySessionCodec implements SessionCodec {
+
+    static final int MAGIC = 0xB5;
+    static final int VERSION = 1;
+
+    private static final int T_NULL = 0;
+    private static final int T_ANSWER_INDEX = 1;
+    private static final int T_STRING = 2;
+    private static final int T_DATE = 3;
+    private static final int T_DATE_TIME = 4;
+    private static final int T_AMOUNT = 5;
+    private static final int T_TRUE = 6;
+    private static final int T_FALSE = 7;
+    private static final int T_INT = 8;
+    private static final int T_LONG = 9;
+    private static final int T_JSON = 10;
+
+    // tipo original do campo amount, para devolver exatamente o que foi recebido
+    private static final int AMOUNT_STRING = 0;
+    private static final int AMOUNT_INT = 1;
+    private static final int AMOUNT_LONG = 2;
+    private static final int AMOUNT_DOUBLE = 3;
+    private static final int AMOUNT_DECIMAL = 4;
+
+    private final SessionSymbolTable symbolTable;
+    private final JsonSessionCodec legacy = new JsonSessionCodec();
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public BinarySessionCodec(SessionSymbolTable symbolTable) {
+        this.symbolTable = symbolTable;
+    }
+
+    /**
+     * Indica se o valor salvo está no formato binário (e não no JSON legado).
+     */
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length > 1 && (bytes[0] & 0xFF) == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(SessionState state) {
+        SessionSymbols symbols = symbolTable.forEncoding(state.getQuestionnaireId());
+        List<Map<String, Object>> answers = state.getAnswers() == null ? List.of() : state.getAnswers();
+        VarintWriter w = new VarintWriter(16 + answers.size() * 4);
+        w.writeByte(MAGIC).writeByte(VERSION);
+        w.writeString(state.getQuestionnaireId() == null ? "" : state.getQuestionnaireId());
+        w.writeInt32(symbols == null ? 0 : symbols.fingerprint);
+        w.writeVarint(answers.size());
+        for (Map<String, Object> a : answers) {
+            String code = a.get("questionCode") == null ? null : String.valueOf(a.get("questionCode"));
+            int id = symbols == null || code == null ? -1 : symbols.questionId(code);
+            if (id >= 0) {
+                w.writeVarint(id + 1L);
+            } else {
+                w.writeVarint(0).writeString(code == null ? "" : code);
+            }
+            writeValue(w, symbols, id, a.get("value"));
+        }
+        if (state.getPath() != null) {
+            w.writeInt32(state.getPathStructure()).writeVarint(state.getPath().size());
+            for (String code : state.getPath()) writeQuestionRef(w, symbols, code);
+        }
+        return w.toByteArray();
+    }
+
+    @Override
+    public SessionState decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) return null;
+        if (!isBinary(bytes)) return legacy.decode(bytes);
+        VarintReader r = new VarintReader(bytes, 1);
+        int version = r.readByte();
+        if (version != VERSION) throw new IllegalArgumentException("versão de sessão binária não suportada: " + version);
+        String questionnaireId = r.readString();
+        int fingerprint = r.readInt32();
+        int count = r.readVarintInt();
+        SessionSymbols symbols = null;
+        List<Map<String, Object>> answers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int ref = r.readVarintInt();
+            int id = ref - 1;
+            String code;
+            if (ref == 0) {
+                code = r.readString();
+            } else {
+                if (symbols == null) symbols = requireSymbols(questionnaireId, fingerprint);
+                code = symbols.questionCodes[id];
+            }
+            Map<String, Object> answer = new HashMap<>();
+            answer.put("questionCode", code);
+            answer.put("value", readValue(r, symbols, id, questionnaireId, fingerprint));
+            answers.add(answer);
+        }
+        SessionState state = new SessionState(questionnaireId.isEmpty() ? null : questionnaireId, answers);
+        if (r.hasRemaining()) {
+            state.setPathStructure(r.readInt32());
+            int size = r.readVarintInt();
+            List<String> path = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int ref = r.readVarintInt();
+                if (ref == 0) {
+                    path.add(r.readString());
+                } else {
+                    if (symbols == null) symbols = requireSymbols(questionnaireId, fingerprint);
+                    path.add(symbols.questionCodes[ref - 1]);
+                }
+            }
+            state.setPath(path);
+        }
+        return state;
+    }
+
+    private static void writeQuestionRef(VarintWriter w, SessionSymbols symbols, String code) {
+        int id = symbols == null ? -1 : symbols.questionId(code);
+        if (id >= 0) {
+            w.writeVarint(id + 1L);
+        } else {
+            w.writeVarint(0).writeString(code);
+        }
+    }
+
+    private SessionSymbols requireSymbols(String questionnaireId, int fingerprint) {
+        SessionSymbols symbols = symbolTable.forDecoding(questionnaireId, fingerprint);
+        if (symbols == null) {
+            throw new IllegalStateException("tabela de códigos " + Integer.toHexString(fingerprint)
+                    + " do questionário " + questionnaireId + " indisponível");
+        }
+        return symbols;
+    }
+
+    private void writeValue(VarintWriter w, SessionSymbols symbols, int questionId, Object value) {
+        if (value == null) {
+            w.writeByte(T_NULL);
+        } else if (value instanceof String s) {
+            writeString(w, symbols, questionId, s);
+        } else if (value instanceof Boolean b) {
+            w.writeByte(b ? T_TRUE : T_FALSE);
+        } else if (value instanceof Integer n) {
+            w.writeByte(T_INT).writeZigzag(n);
+        } else if (value instanceof Long n) {
+            w.writeByte(T_LONG).writeZigzag(n);
+        } else if (!(value instanceof Map<?, ?> m) || !writeAmount(w, m)) {
+            writeJson(w, value);
+        }
+    }
+
+    private void writeString(VarintWriter w, SessionSymbols symbols, int questionId, String s) {
+        if (questionId >= 0) {
+            int idx = symbols.answerIndex(questionId, s);
+            if (idx >= 0) {
+                w.writeByte(T_ANSWER_INDEX).writeVarint(idx);
+                return;
+            }
+        }
+        if (s.length() == 10 && s.charAt(4) == '-' && s.charAt(7) == '-') {
+            LocalDate date = parseDate(s);
+            if (date != null && date.toString().equals(s)) {
+                w.writeByte(T_DATE).writeZigzag(date.toEpochDay());
+                return;
+            }
+        } else if (s.length() >= 16 && s.charAt(10) == 'T') {
+            LocalDateTime dateTime = parseDateTime(s);
+            if (dateTime != null && dateTime.toString().equals(s)) {
+                w.writeByte(T_DATE_TIME)
+                        .writeZigzag(dateTime.toEpochSecond(ZoneOffset.UTC))
+                        .writeVarint(dateTime.getNano());
+                return;
+            }
+        }
+        w.writeByte(T_STRING).writeString(s);
+    }
+
+    /**
+     * Grava {amount, currency} com o valor como decimal (unscaled + scale). Retorna false quando o
+     * mapa tem outro formato ou o valor não pode ser reproduzido exatamente, para cair no JSON.
+     */
+    private boolean writeAmount(VarintWriter w, Map<?, ?> m) {
+        if (!m.containsKey("amount") || m.size() > 2 || (m.size() == 2 && !m.containsKey("currency"))) return false;
+        Object currency = m.get("currency");
+        if (currency != null && !(currency instanceof String)) return false;
+        Object amount = m.get("amount");
+        int kind;
+        BigDecimal decimal;
+        if (amount instanceof String s) {
+            decimal = parseDecimal(s);
+            if (decimal == null || !decimal.toString().equals(s)) return false;
+            kind = AMOUNT_STRING;
+        } else if (amount instanceof Integer n) {
+            decimal = BigDecimal.valueOf(n);
+            kind = AMOUNT_INT;
+        } else if (amount instanceof Long n) {
+            decimal = BigDecimal.valueOf(n);
+            kind = AMOUNT_LONG;
+        } else if (amount instanceof Double d) {
+            if (d.isNaN() || d.isInfinite()) return false;
+            decimal = BigDecimal.valueOf(d);
+            kind = AMOUNT_DOUBLE;
+        } else if (amount instanceof BigDecimal d) {
+            decimal = d;
+            kind = AMOUNT_DECIMAL;
+        } else {
+            return false;
+        }
+        w.writeByte(T_AMOUNT).writeByte(kind);
+        w.writeBytes(decimal.unscaledValue().toByteArray()).writeZigzag(decimal.scale());
+        if (m.containsKey("currency")) {
+            w.writeByte(currency == null ? 1 : 2);
+            if (currency != null) w.writeString((String) currency);
+        } else {
+            w.writeByte(0);
+        }
+        return true;
+    }
+
+    private void writeJson(VarintWriter w, Object value) {
+        try {
+            w.writeByte(T_JSON).writeBytes(mapper.writeValueAsBytes(value));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Object readValue(VarintReader r, SessionSymbols symbols, int questionId, String questionnaireId, int fingerprint) {
+        int tag = r.readByte();
+        switch (tag) {
+            case T_NULL:
+                return null;
+            case T_ANSWER_INDEX: {
+                int idx = r.readVarintInt();
+                SessionSymbols table = symbols != null ? symbols : requireSymbols(questionnaireId, fingerprint);
+                return table.answerCodes[questionId][idx];
+            }
+            case T_STRING:
+                return r.readString();
+            case T_DATE:
+                return LocalDate.ofEpochDay(r.readZigzag()).toString();
+            case T_DATE_TIME: {
+                long seconds = r.readZigzag();
+                int nanos = r.readVarintInt();
+                return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC).toString();
+            }
+            case T_AMOUNT:
+                return readAmount(r);
+            case T_TRUE:
+                return Boolean.TRUE;
+            case T_FALSE:
+                return Boolean.FALSE;
+            case T_INT:
+                return (int) r.readZigzag();
+            case T_LONG:
+                return r.readZigzag();
+            case T_JSON:
+                try {
+                    return mapper.readValue(r.readBytes(), Object.class);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            default:
+                throw new IllegalArgumentException("tipo de valor desconhecido: " + tag);
+        }
+    }
+
+    private Map<String, Object> readAmount(VarintReader r) {
+        int kind = r.readByte();
+        BigDecimal decimal = new BigDecimal(new BigInteger(r.readBytes()), (int) r.readZigzag());
+        Object amount;
+        switch (kind) {
+            case AMOUNT_STRING -> amount = decimal.toString();
+            case AMOUNT_INT -> amount = decimal.intValueExact();
+            case AMOUNT_LONG -> amount = decimal.longValueExact();
+            case AMOUNT_DOUBLE -> amount = decimal.doubleValue();
+            case AMOUNT_DECIMAL -> amount = decimal;
+            default -> throw new IllegalArgumentException("tipo de amount desconhecido: " + kind);
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("amount", amount);
+        int currency = r.readByte();
+        if (currency == 1) m.put("currency", null);
+        else if (currency == 2) m.put("currency", r.readString());
+        return m;
+    }
+
+    private static LocalDate parseDate(String s) {
+        try {
+            return LocalDate.parse(s);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static LocalDateTime parseDateTime(String s) {
+        try {
+            return LocalDateTime.parse(s);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static BigDecimal parseDecimal(String s) {
+        try {
+            return new BigDecimal(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.question.session;
+
+import com.example.question.model.CompletedSession;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gravação e leitura dos registros de sessões concluídas, comum aos modos de armazenamento.
+ * O registro é um JSON pequeno em {@link SessionKeys#completed(String)}; gravá-lo e remover o estado
+ * vivo da sessão é feito por um único script, condicionado à versão lida como a gravação de um passo.
+ * A versão vem do campo {@code __v} do hash (modo hash) ou da chave de versão (modos value e journal).
+ */
+@Component
+class CompletedSessions {
+
+    // KEYS: registro, valor, versão, hash, diário | ARGV: versão esperada (-1 = qualquer), registro,
+    // retenção em ms (0 = sem expiração), aviso de invalidação (vazio = não publica)
+    // Retorna -1 quando a versão não confere (nada é gravado nem removido).
+    private static final RedisScript<Long> COMPLETE_SCRIPT = new DefaultRedisScript<>(
+            "local v = 0 "
+                    + "local hv = redis.call('HGET', KEYS[4], '" + HashSessionStore.VERSION_FIELD + "') "
+                    + "if hv then v = tonumber(hv) else "
+                    + "  local meta = redis.call('GET', KEYS[3]) "
+                    + "  if meta then v = tonumber(string.match(meta, '^%d+')) end "
+                    + "end "
+                    + "if ARGV[1] ~= '-1' and v ~= tonumber(ARGV[1]) then return -1 end "
+                    + "if tonumber(ARGV[3]) > 0 then redis.call('SET', KEYS[1], ARGV[2], 'PX', ARGV[3]) "
+                    + "else redis.call('SET', KEYS[1], ARGV[2]) end "
+                    + "if ARGV[4] ~= '' then redis.call('PUBLISH', '" + SessionInvalidation.CHANNEL + "', ARGV[4]) end "
+                    + "return redis.call('DEL', unpack(KEYS, 2))",
+            Long.class);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Autowired
+    @Qualifier("sessionRedisTemplate")
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    /** Réplicas, quando configuradas: registros concluídos não mudam, então o atraso de replicação é inofensivo. */
+    @Autowired
+    @Qualifier("sessionReadTemplate")
+    private RedisTemplate<String, byte[]> readTemplate;
+
+    @Autowired
+    private SessionTtl sessionTtl;
+
+    @Autowired
+    private SessionInvalidation invalidation;
+
+    /**
+     * Grava o registro e remove o estado vivo se a sessão ainda estiver na versão esperada;
+     * false quando outra gravação a alterou.
+     */
+    boolean complete(String sessionId, long expectedVersion, CompletedSession completed) {
+        byte[] record;
+        try {
+            record = mapper.writeValueAsBytes(completed);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String retention = SessionTtl.millis(sessionTtl.completed(completed.getQuestionnaireId()));
+        Long result = redisTemplate.execute(COMPLETE_SCRIPT, RedisSerializer.byteArray(), null,
+                List.of(SessionKeys.completed(sessionId), SessionKeys.value(sessionId),
+                        SessionKeys.version(sessionId), SessionKeys.hash(sessionId), SessionKeys.journal(sessionId)),
+                Long.toString(expectedVersion).getBytes(StandardCharsets.US_ASCII), record,
+                retention.getBytes(StandardCharsets.US_ASCII), invalidation.payload(sessionId));
+        return result != null && result >= 0;
+    }
+
+    CompletedSession load(String sessionId) {
+        return decode(redisTemplate.opsForValue().get(SessionKeys.completed(sessionId)));
+    }
+
+    /**
+     * Vários registros em um único MGET (lido das réplicas, se habilitadas); valor null para ids sem registro.
+     */
+    Map<String, CompletedSession> loadAll(Collection<String> sessionIds) {
+        List<String> ids = new ArrayList<>(sessionIds);
+        List<String> keys = new ArrayList<>(ids.size());
+        for (String id : ids) keys.add(SessionKeys.completed(id));
+        List<byte[]> values = ids.isEmpty() ? List.of() : readTemplate.opsForValue().multiGet(keys);
+        Map<String, CompletedSession> records = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) records.put(ids.get(i), values == null ? null : decode(values.get(i)));
+        return records;
+    }
+
+    private CompletedSession decode(byte[] record) {
+        if (record == null) return null;
+        try {
+            return mapper.readValue(record, CompletedSession.class);
+        } catch (IOException e) {
+            // registro ilegível equivale a registro ausente
+            return null;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.question.session;
+
+import com.example.question.model.CompletedSession;
+import com.example.question.model.SessionState;
+import com.example.question.service.StepMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Armazenamento por campo: cada sessão é um hash Redis {@code session:<sessionId>} com um campo por
+ * pergunta respondida ({@code HSET session questionCode value}) e os campos reservados
+ * {@value #QUESTIONNAIRE_FIELD}, {@value #VERSION_FIELD}, {@value #CREATED_FIELD} e {@value #PATH_FIELD} (ramo ativo). Cada passo grava apenas as respostas alteradas e remove
+ * ({@code HDEL}) apenas as podadas; leituras parciais usam {@code HMGET}.
+ *
+ * A gravação é um script Lua que confere a versão lida, aplica remoções e alterações e incrementa a
+ * versão atomicamente, em uma única ida ao Redis, renovando a expiração do hash ({@link SessionTtl}).
+ *
+ * Sessões ainda no formato de valor único são migradas na primeira leitura: a chave legada é lida no
+ * mesmo pipeline do hash ({@code session.hash.migrate-legacy}, desligável depois da migração).
+ * A ordem das respostas não é preservada: o ramo é sempre derivado do grafo do questionário.
+ */
+@Component(NearCachedSessionStore.BACKING_STORE)
+@ConditionalOnProperty(name = "session.storage", havingValue = "hash")
+public class HashSessionStore implements SessionStore {
+
+    static final String QUESTIONNAIRE_FIELD = "__questionnaireId";
+    static final String VERSION_FIELD = "__v";
+    static final String CREATED_FIELD = "__c";
+    static final String PATH_FIELD = "__path";
+
+    // KEYS: hash | ARGV: versão esperada (-1 = qualquer), substituir (0/1), questionnaireId,
+    // agora, sliding, absolute (ms), aviso de invalidação (vazio = não publica),
+    // quantidade de remoções, campos removidos..., pares campo/valor...
+    // HSET em blocos para não estourar o limite de argumentos do unpack.
+    private static final RedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>(
+            SessionTtl.LUA_TTL_FUNCTION
+                    + "local meta = redis.call('HMGET', KEYS[1], '" + VERSION_FIELD + "', '" + CREATED_FIELD + "') "
+                    + "local now = tonumber(ARGV[4]) "
+                    + "local v = tonumber(meta[1] or '0') "
+                    + "local created = tonumber(meta[2] or ARGV[4]) "
+                    + "if ARGV[1] ~= '-1' and v ~= tonumber(ARGV[1]) then return -1 end "
+                    + "if ARGV[2] == '1' then redis.call('DEL', KEYS[1]) end "
+                    + "local n = tonumber(ARGV[8]) "
+                    + "for i = 9, 8 + n do redis.call('HDEL', KEYS[1], ARGV[i]) end "
+                    + "local batch = {} "
+                    + "for i = 9 + n, #ARGV do "
+                    + "  batch[#batch + 1] = ARGV[i] "
+                    + "  if #batch == 1000 then redis.call('HSET', KEYS[1], unpack(batch)) batch = {} end "
+                    + "end "
+                    + "if #batch > 0 then redis.call('HSET', KEYS[1], unpack(batch)) end "
+                    + "redis.call('HSET', KEYS[1], '" + QUESTIONNAIRE_FIELD + "', ARGV[3], '" + VERSION_FIELD + "', v + 1, '"
+                    + CREATED_FIELD + "', created) "
+                    + "local ttl = session_ttl(now, created, tonumber(ARGV[5]), tonumber(ARGV[6])) "
+                    + "if ttl then redis.call('PEXPIRE', KEYS[1], ttl) end "
+                    + "if ARGV[7] ~= '' then redis.call('PUBLISH', '" + SessionInvalidation.CHANNEL + "', ARGV[7]) end "
+                    + "return v + 1",
+            Long.class);
+
+    private static final GenericJackson2JsonRedisSerializer JSON = new GenericJackson2JsonRedisSerializer();
+
+    @Autowired
+    @Qualifier("sessionRedisTemplate")
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    @Autowired
+    private SessionCodec sessionCodec;
+
+    @Autowired
+    private SessionTtl sessionTtl;
+
+    @Autowired
+    private CompletedSessions completedSessions;
+
+    @Autowired
+    private SessionInvalidation invalidation;
+
+    @Autowired
+    private StepMetrics stepMetrics;
+
+    @Value("${session.hash.migrate-legacy:true}")
+    private boolean migrateLegacy = true;
+
+    private HashOperations<String, String, byte[]> hash() {
+        return redisTemplate.opsForHash();
+    }
+
+    @Override
+    public SessionState load(String sessionId) {
+        if (!migrateLegacy) {
+            Map<String, byte[]> fields = hash().entries(SessionKeys.hash(sessionId));
+            return fields == null || fields.isEmpty() ? null : toState(fields);
+        }
+        return loadAll(List.of(sessionId)).get(sessionId);
+    }
+
+    @Override
+    public SessionState load(String sessionId, Collection<String> questionCodes) {
+        List<String> fields = new ArrayList<>(questionCodes.size() + 3);
+        fields.add(QUESTIONNAIRE_FIELD);
+        fields.add(VERSION_FIELD);
+        fields.add(PATH_FIELD);
+        fields.addAll(questionCodes);
+        List<byte[]> values;
+        byte[] legacy = null;
+        if (migrateLegacy) {
+            List<Object> results = pipelined(List.of(sessionId), (operations, id) ->
+                    operations.<String, byte[]>opsForHash().multiGet(SessionKeys.hash(id), fields));
+            @SuppressWarnings("unchecked")
+            List<byte[]> read = (List<byte[]>) results.get(0);
+            values = read;
+            legacy = (byte[]) results.get(1);
+        } else {
+            values = hash().multiGet(SessionKeys.hash(sessionId), fields);
+        }
+        if (values == null || values.get(0) == null) {
+            // hash inexistente: sessão nova ou legada ainda não migrada
+            return migrate(sessionId, legacy);
+        }
+        List<Map<String, Object>> answers = new ArrayList<>();
+        for (int i = 3; i < fields.size(); i++) {
+            byte[] value = values.get(i);
+            // campos ausentes voltam como null; respostas salvas com valor null não são distinguíveis
+            if (value != null) answers.add(answer(fields.get(i), JSON.deserialize(value)));
+        }
+        SessionState state = new SessionState(String.valueOf(JSON.deserialize(values.get(0))), answers);
+        state.setVersion(ValueSessionStore.parseVersion(values.get(1)));
+        if (values.get(2) != null) ValueSessionStore.readPath(state, JSON.deserialize(values.get(2)));
+        state.setComplete(false);
+        return state;
+    }
+
+    /**
+     * HGETALL de todas as sessões (e o GET das chaves legadas, se a migração estiver ligada) em um
+     * único pipeline; sessões legadas encontradas são migradas individualmente.
+     */
+    @Override
+    public Map<String, SessionState> loadAll(Collection<String> sessionIds) {
+        List<String> ids = new ArrayList<>(sessionIds);
+        List<Object> results = pipelined(ids, (operations, id) ->
+                operations.<String, byte[]>opsForHash().entries(SessionKeys.hash(id)));
+        int stride = migrateLegacy ? 2 : 1;
+        Map<String, SessionState> states = new HashMap<>(ids.size() * 2);
+        for (int i = 0; i < ids.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<String, byte[]> fields = (Map<String, byte[]>) results.get(i * stride);
+            if (fields != null && !fields.isEmpty()) {
+                states.put(ids.get(i), toState(fields));
+            } else {
+                states.put(ids.get(i), migrateLegacy ? migrate(ids.get(i), (byte[]) results.get(i * stride + 1)) : null);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * Um comando de leitura por sessão em um pipeline, seguido do GET da chave legada quando a
+     * migração está ligada: os resultados alternam leitura/legado nesse caso.
+     */
+    private List<Object> pipelined(List<String> ids, BiConsumer<RedisOperations<String, byte[]>, String> read) {
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, byte[]> ops = (RedisOperations<String, byte[]>) operations;
+                for (String id : ids) {
+                    read.accept(ops, id);
+                    if (migrateLegacy) ops.opsForValue().get(SessionKeys.value(id));
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public boolean save(String sessionId, String questionnaireId, List<Map<String, Object>> merged, SessionChanges changes) {
+        // o ramo ativo é gravado (ou descartado) apenas quando mudou
+        boolean writePath = changes.isPathChanged() && changes.getPath() != null;
+        boolean dropPath = changes.isPathChanged() && changes.getPath() == null;
+        List<byte[]> args = new ArrayList<>(10 + changes.getRemovals().size() + changes.getUpserts().size() * 2);
+        args.add(ascii(Long.toString(changes.getExpectedVersion())));
+        args.add(ascii(changes.isReplace() ? "1" : "0"));
+        args.add(JSON.serialize(questionnaireId));
+        args.add(ascii(Long.toString(System.currentTimeMillis())));
+        args.add(ascii(SessionTtl.millis(sessionTtl.sliding(questionnaireId))));
+        args.add(ascii(SessionTtl.millis(sessionTtl.absolute(questionnaireId))));
+        args.add(invalidation.payload(sessionId));
+        args.add(ascii(Integer.toString(changes.getRemovals().size() + (dropPath ? 1 : 0))));
+        for (String code : changes.getRemovals()) args.add(code.getBytes(StandardCharsets.UTF_8));
+        if (dropPath) args.add(ascii(PATH_FIELD));
+        for (Map.Entry<String, Object> e : changes.getUpserts().entrySet()) {
+            args.add(e.getKey().getBytes(StandardCharsets.UTF_8));
+            args.add(JSON.serialize(e.getValue()));
+        }
+        if (writePath) {
+            args.add(ascii(PATH_FIELD));
+            args.add(JSON.serialize(ValueSessionStore.pathValue(changes.getPath(), changes.getPathStructure())));
+        }
+        int payload = 0;
+        for (byte[] arg : args) payload += arg.length;
+        stepMetrics.payload(payload);
+        Long version = redisTemplate.execute(SAVE_SCRIPT, RedisSerializer.byteArray(), null,
+                List.of(SessionKeys.hash(sessionId)), args.toArray());
+        return version != null && version >= 0;
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        redisTemplate.delete(List.of(SessionKeys.hash(sessionId), SessionKeys.value(sessionId), SessionKeys.version(sessionId)));
+        invalidation.publish(sessionId);
+    }
+
+    @Override
+    public boolean complete(String sessionId, long expectedVersion, CompletedSession completed) {
+        return completedSessions.complete(sessionId, expectedVersion, completed);
+    }
+
+    @Override
+    public CompletedSession loadCompleted(String sessionId) {
+        return completedSessions.load(sessionId);
+    }
+
+    @Override
+    public Map<String, CompletedSession> loadAllCompleted(Collection<String> sessionIds) {
+        return completedSessions.loadAll(sessionIds);
+    }
+
+    @Override
+    public void scanIds(boolean completed, int batchSize, Consumer<List<String>> batches) {
+        if (completed) {
+            SessionKeyScanner.scanCompleted(redisTemplate, batchSize, batches);
+            return;
+        }
+        SessionKeyScanner.scan(redisTemplate, SessionKeys.HASH_PREFIX + "*", batchSize, key ->
+                key.startsWith(SessionKeys.COMPLETED_PREFIX) || key.startsWith(SessionSymbolTable.KEY_PREFIX)
+                        || key.startsWith(SessionKeys.JOURNAL_PREFIX) ? null : SessionKeys.sessionId(key.substring(SessionKeys.HASH_PREFIX.length())),
+                batches);
+    }
+
+    private SessionState migrate(String sessionId, byte[] stored) {
+        SessionState legacy = sessionCodec.decode(stored);
+        if (legacy == null) return null;
+        save(sessionId, legacy.getQuestionnaireId(), legacy.getAnswers(), SessionChanges.replaceAll(legacy.getAnswers())
+                .path(legacy.getPath(), legacy.getPathStructure(), legacy.getPath() != null));
+        redisTemplate.delete(List.of(SessionKeys.value(sessionId), SessionKeys.version(sessionId)));
+        // a leitura seguinte enxerga o hash recém-criado com sua versão
+        return load(sessionId);
+    }
+
+    private static SessionState toState(Map<String, byte[]> fields) {
+        Object questionnaireId = JSON.deserialize(fields.get(QUESTIONNAIRE_FIELD));
+        List<Map<String, Object>> answers = new ArrayList<>(fields.size());
+        for (Map.Entry<String, byte[]> e : fields.entrySet()) {
+            String field = e.getKey();
+            // campos reservados começam com "__" (o validador rejeita perguntas com esse prefixo)
+            if (!field.startsWith("__")) answers.add(answer(field, JSON.deserialize(e.getValue())));
+        }
+        SessionState state = new SessionState(questionnaireId == null ? null : String.valueOf(questionnaireId), answers);
+        state.setVersion(ValueSessionStore.parseVersion(fields.get(VERSION_FIELD)));
+        if (fields.get(PATH_FIELD) != null) ValueSessionStore.readPath(state, JSON.deserialize(fields.get(PATH_FIELD)));
+        return state;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static Map<String, Object> answer(String questionCode, Object value) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("questionCode", questionCode);
+        m.put("value", value);
+        return m;
+    }
+}
@@ -0,0 +1,412 @@
+package com.example.question.session;
+
+import com.example.question.model.CompletedSession;
+import com.example.question.model.SessionState;
+import com.example.question.service.StepMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Armazenamento em diário: cada passo acrescenta eventos a um Redis Stream por sessão
+ * ({@link SessionKeys#journal(String)}) em vez de regravar a sessão inteira. Eventos:
+ * {@code start} (início ou troca de questionário), {@code answer} (resposta incluída ou alterada),
+ * {@code prune} (respostas podadas por mudança de fluxo) e {@code path} (ramo ativo), todos com a
+ * versão da sessão que os gravou.
+ *
+ * O estado é um snapshot no formato do modo value ({@link SessionKeys#value(String)}, mesmo
+ * {@link SessionCodec}) mais a cauda do diário posterior a ele. Os metadados
+ * ({@link SessionKeys#version(String)}) guardam {@code versão:criação:últimoIdCompactado:tamanhoDaCauda}.
+ * Quando a cauda passa de {@code session.journal.compact-threshold} eventos, um compactador em
+ * segundo plano grava um novo snapshot; os eventos compactados continuam no stream como histórico
+ * de auditoria, limitado a {@code session.journal.max-length} eventos.
+ *
+ * Sessões gravadas no modo value são lidas diretamente (snapshot sem diário).
+ */
+@Component(NearCachedSessionStore.BACKING_STORE)
+@ConditionalOnProperty(name = "session.storage", havingValue = "journal")
+public class JournalSessionStore implements SessionStore {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalSessionStore.class);
+
+    static final String START = "start";
+    static final String ANSWER = "answer";
+    static final String PRUNE = "prune";
+    static final String PATH = "path";
+
+    // tipo do resultado dos scripts que devolvem listas (itens mistos: números, bytes e listas aninhadas)
+    @SuppressWarnings("unchecked")
+    private static final Class<List<Object>> LIST_RESULT = (Class<List<Object>>) (Class<?>) List.class;
+    // o Spring aplica o serializador de resultado a cada item da lista (recursivamente): bytes ficam como bytes
+    @SuppressWarnings("unchecked")
+    private static final RedisSerializer<List<Object>> RAW_ITEMS = (RedisSerializer<List<Object>>) (RedisSerializer<?>) RedisSerializer.byteArray();
+
+    // metadados: versão, criação, id do último evento compactado (0-0 = nenhum) e eventos após ele
+    private static final String LUA_META_FUNCTION =
+            "local function parse_meta(meta, now) "
+                    + "local p = {} "
+                    + "for part in string.gmatch(meta, '[^:]+') do p[#p + 1] = part end "
+                    + "return tonumber(p[1]), tonumber(p[2] or now), p[3] or '0-0', tonumber(p[4] or '0') "
+                    + "end ";
+
+    // KEYS: metadados, snapshot, diário | ARGV: versão esperada (-1 = qualquer), agora, sliding, absolute (ms),
+    // aviso de invalidação (vazio = não publica), questionnaireId, substituir (0/1), trincas evento/chave/dado...
+    // Retorna {nova versão, eventos após o snapshot} ou {-1, 0} quando a versão não confere.
+    private static final RedisScript<List<Object>> APPEND_SCRIPT = new DefaultRedisScript<>(
+            SessionTtl.LUA_TTL_FUNCTION + LUA_META_FUNCTION
+                    + "local now = tonumber(ARGV[2]) "
+                    + "local v, created, last, tail = 0, now, '0-0', 0 "
+                    + "local meta = redis.call('GET', KEYS[1]) "
+                    + "if meta then v, created, last, tail = parse_meta(meta, now) end "
+                    + "if ARGV[1] ~= '-1' and v ~= tonumber(ARGV[1]) then return {-1, 0} end "
+                    + "local nv = v + 1 "
+                    + "if v == 0 or ARGV[7] == '1' then "
+                    + "  redis.call('XADD', KEYS[3], '*', 'v', nv, 'e', '" + START + "', 'k', ARGV[6], 'd', '') "
+                    + "  tail = tail + 1 "
+                    + "end "
+                    + "for i = 8, #ARGV, 3 do "
+                    + "  redis.call('XADD', KEYS[3], '*', 'v', nv, 'e', ARGV[i], 'k', ARGV[i + 1], 'd', ARGV[i + 2]) "
+                    + "  tail = tail + 1 "
+                    + "end "
+                    + "redis.call('SET', KEYS[1], nv .. ':' .. created .. ':' .. last .. ':' .. tail) "
+                    + "local ttl = session_ttl(now, created, tonumber(ARGV[3]), tonumber(ARGV[4])) "
+                    + "if ttl then for i = 1, 3 do redis.call('PEXPIRE', KEYS[i], ttl) end end "
+                    + "if ARGV[5] ~= '' then redis.call('PUBLISH', '" + SessionInvalidation.CHANNEL + "', ARGV[5]) end "
+                    + "return {nv, tail}",
+            LIST_RESULT);
+
+    // KEYS: metadados, snapshot, diário | Retorna {} (sessão inexistente) ou {metadados, snapshot ('' = nenhum),
+    // eventos posteriores ao último compactado}, lidos atomicamente em relação às gravações e à compactação.
+    private static final RedisScript<List<Object>> READ_SCRIPT = new DefaultRedisScript<>(
+            LUA_META_FUNCTION
+                    + "local meta = redis.call('GET', KEYS[1]) "
+                    + "if not meta then return {} end "
+                    + "local v, created, last = parse_meta(meta, 0) "
+                    + "local ms, seq = string.match(last, '^(%d+)-(%d+)$') "
+                    + "local tail = redis.call('XRANGE', KEYS[3], ms .. '-' .. (tonumber(seq) + 1), '+') "
+                    + "return {meta, redis.call('GET', KEYS[2]) or '', tail}",
+            LIST_RESULT);
+
+    // KEYS: metadados, snapshot, diário | ARGV: versão compactada, snapshot, id do último evento incluído,
+    // histórico mantido no stream (0 = ilimitado). Só aplica se nenhuma gravação ocorreu desde a leitura.
+    private static final RedisScript<Long> COMPACT_SCRIPT = new DefaultRedisScript<>(
+            LUA_META_FUNCTION
+                    + "local meta = redis.call('GET', KEYS[1]) "
+                    + "if not meta then return 0 end "
+                    + "local v, created = parse_meta(meta, 0) "
+                    + "if v ~= tonumber(ARGV[1]) then return 0 end "
+                    + "local ttl = redis.call('PTTL', KEYS[1]) "
+                    + "redis.call('SET', KEYS[2], ARGV[2]) "
+                    + "redis.call('SET', KEYS[1], v .. ':' .. created .. ':' .. ARGV[3] .. ':0') "
+                    + "if ttl > 0 then redis.call('PEXPIRE', KEYS[1], ttl) redis.call('PEXPIRE', KEYS[2], ttl) end "
+                    + "if tonumber(ARGV[4]) > 0 then redis.call('XTRIM', KEYS[3], 'MAXLEN', '~', ARGV[4]) end "
+                    + "return 1",
+            Long.class);
+
+    // KEYS: diário | todos os eventos mantidos, no mesmo formato da cauda de READ_SCRIPT
+    private static final RedisScript<List<Object>> HISTORY_SCRIPT = new DefaultRedisScript<>(
+            "return redis.call('XRANGE', KEYS[1], '-', '+')", LIST_RESULT);
+
+    private static final GenericJackson2JsonRedisSerializer JSON = new GenericJackson2JsonRedisSerializer();
+    private static final byte[] EMPTY = new byte[0];
+
+    @Autowired
+    @Qualifier("sessionRedisTemplate")
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    @Autowired
+    private SessionCodec sessionCodec;
+
+    @Autowired
+    private SessionTtl sessionTtl;
+
+    @Autowired
+    private CompletedSessions completedSessions;
+
+    @Autowired
+    private SessionInvalidation invalidation;
+
+    @Autowired
+    private StepMetrics stepMetrics;
+
+    @Value("${session.journal.compact-threshold:64}")
+    private int compactThreshold;
+
+    @Value("${session.journal.max-length:1000}")
+    private int maxLength;
+
+    // sessões com compactação agendada (evita agendar a mesma sessão várias vezes)
+    private final Set<String> compacting = ConcurrentHashMap.newKeySet();
+    private ThreadPoolTaskExecutor compactor;
+
+    @PostConstruct
+    void startCompactor() {
+        compactor = new ThreadPoolTaskExecutor();
+        compactor.setCorePoolSize(1);
+        compactor.setMaxPoolSize(1);
+        compactor.setQueueCapacity(10_000);
+        compactor.setThreadNamePrefix("journal-compactor-");
+        compactor.initialize();
+    }
+
+    @PreDestroy
+    void stopCompactor() {
+        compactor.shutdown();
+    }
+
+    @Override
+    public SessionState load(String sessionId) {
+        Replayed replayed = read(sessionId);
+        return replayed == null ? null : replayed.state();
+    }
+
+    @Override
+    public boolean save(String sessionId, String questionnaireId, List<Map<String, Object>> merged, SessionChanges changes) {
+        List<byte[]> args = new ArrayList<>(7 + 3 * (changes.getUpserts().size() + 2));
+        args.add(ascii(Long.toString(changes.getExpectedVersion())));
+        args.add(ascii(Long.toString(System.currentTimeMillis())));
+        args.add(ascii(SessionTtl.millis(sessionTtl.sliding(questionnaireId))));
+        args.add(ascii(SessionTtl.millis(sessionTtl.absolute(questionnaireId))));
+        args.add(invalidation.payload(sessionId));
+        args.add(utf8(questionnaireId == null ? "" : questionnaireId));
+        args.add(ascii(changes.isReplace() ? "1" : "0"));
+        // a poda vem antes das respostas do passo, na mesma ordem aplicada pelo controller
+        if (!changes.getRemovals().isEmpty()) {
+            event(args, PRUNE, "", JSON.serialize(new ArrayList<>(changes.getRemovals())));
+        }
+        for (Map.Entry<String, Object> e : changes.getUpserts().entrySet()) {
+            event(args, ANSWER, e.getKey(), JSON.serialize(e.getValue()));
+        }
+        if (changes.isPathChanged()) {
+            event(args, PATH, "", changes.getPath() == null ? EMPTY
+                    : JSON.serialize(ValueSessionStore.pathValue(changes.getPath(), changes.getPathStructure())));
+        }
+        int payload = 0;
+        for (byte[] arg : args) payload += arg.length;
+        stepMetrics.payload(payload);
+
+        List<?> result = redisTemplate.execute(APPEND_SCRIPT, RedisSerializer.byteArray(), RAW_ITEMS,
+                List.of(SessionKeys.version(sessionId), SessionKeys.value(sessionId), SessionKeys.journal(sessionId)),
+                args.toArray());
+        long version = result == null || result.isEmpty() ? -1 : ((Number) result.get(0)).longValue();
+        if (version < 0) return false;
+        if (((Number) result.get(1)).longValue() >= compactThreshold) scheduleCompaction(sessionId);
+        return true;
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        redisTemplate.delete(List.of(SessionKeys.value(sessionId), SessionKeys.version(sessionId), SessionKeys.journal(sessionId)));
+        invalidation.publish(sessionId);
+    }
+
+    @Override
+    public boolean complete(String sessionId, long expectedVersion, CompletedSession completed) {
+        return completedSessions.complete(sessionId, expectedVersion, completed);
+    }
+
+    @Override
+    public CompletedSession loadCompleted(String sessionId) {
+        return completedSessions.load(sessionId);
+    }
+
+    @Override
+    public Map<String, CompletedSession> loadAllCompleted(Collection<String> sessionIds) {
+        return completedSessions.loadAll(sessionIds);
+    }
+
+    @Override
+    public void scanIds(boolean completed, int batchSize, Consumer<List<String>> batches) {
+        // o diário e o snapshot acompanham a chave de versão, como no modo value
+        if (completed) SessionKeyScanner.scanCompleted(redisTemplate, batchSize, batches);
+        else SessionKeyScanner.scanVersioned(redisTemplate, batchSize, batches);
+    }
+
+    /**
+     * Histórico de eventos mantido no diário da sessão (mais antigo primeiro), para auditoria:
+     * {id, version, event, questionCode | questionnaireId, value | questionCodes | path}.
+     */
+    public List<Map<String, Object>> history(String sessionId) {
+        List<?> entries = redisTemplate.execute(HISTORY_SCRIPT, RedisSerializer.byteArray(), RAW_ITEMS,
+                List.of(SessionKeys.journal(sessionId)));
+        List<Map<String, Object>> history = new ArrayList<>(entries == null ? 0 : entries.size());
+        if (entries == null) return history;
+        for (Object entry : entries) {
+            Event e = Event.of(entry);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", e.id());
+            item.put("version", e.version());
+            item.put("event", e.type());
+            switch (e.type()) {
+                case START -> item.put("questionnaireId", e.key());
+                case ANSWER -> {
+                    item.put("questionCode", e.key());
+                    item.put("value", JSON.deserialize(e.data()));
+                }
+                case PRUNE -> item.put("questionCodes", JSON.deserialize(e.data()));
+                case PATH -> item.put("path", e.data().length == 0 ? null : JSON.deserialize(e.data()));
+                default -> { }
+            }
+            history.add(item);
+        }
+        return history;
+    }
+
+    private void scheduleCompaction(String sessionId) {
+        if (!compacting.add(sessionId)) return;
+        try {
+            compactor.execute(() -> {
+                try {
+                    compact(sessionId);
+                } catch (RuntimeException e) {
+                    log.warn("compactação do diário da sessão {} falhou", sessionId, e);
+                } finally {
+                    compacting.remove(sessionId);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // fila cheia: a próxima gravação da sessão tenta de novo
+            compacting.remove(sessionId);
+        }
+    }
+
+    /**
+     * Grava o estado atual como snapshot, se nenhuma gravação ocorrer entre a leitura e a troca
+     * (caso contrário a próxima gravação agenda de novo).
+     */
+    void compact(String sessionId) {
+        Replayed replayed = read(sessionId);
+        if (replayed == null || replayed.lastId() == null) return;
+        Long applied = redisTemplate.execute(COMPACT_SCRIPT, RedisSerializer.byteArray(), null,
+                List.of(SessionKeys.version(sessionId), SessionKeys.value(sessionId), SessionKeys.journal(sessionId)),
+                ascii(Long.toString(replayed.state().getVersion())), sessionCodec.encode(replayed.state()),
+                ascii(replayed.lastId()), ascii(Integer.toString(maxLength)));
+        log.debug("diário da sessão {} compactado: {} ({} eventos)", sessionId, applied != null && applied == 1, replayed.tail());
+    }
+
+    private Replayed read(String sessionId) {
+        List<?> result = redisTemplate.execute(READ_SCRIPT, RedisSerializer.byteArray(), RAW_ITEMS,
+                List.of(SessionKeys.version(sessionId), SessionKeys.value(sessionId), SessionKeys.journal(sessionId)));
+        if (result == null || result.isEmpty()) return null;
+        return replay(sessionCodec, (byte[]) result.get(0), (byte[]) result.get(1), (List<?>) result.get(2));
+    }
+
+    /**
+     * Estado da sessão: snapshot (ou vazio) com os eventos da cauda aplicados em ordem.
+     */
+    static Replayed replay(SessionCodec codec, byte[] meta, byte[] snapshot, List<?> tail) {
+        SessionState base = snapshot == null || snapshot.length == 0 ? null : codec.decode(snapshot);
+        String questionnaireId = base == null ? null : base.getQuestionnaireId();
+        Map<String, Object> answers = new LinkedHashMap<>();
+        if (base != null && base.getAnswers() != null) {
+            for (Map<String, Object> a : base.getAnswers()) answers.put(String.valueOf(a.get("questionCode")), a.get("value"));
+        }
+        SessionState path = new SessionState();
+        if (base != null) {
+            path.setPath(base.getPath());
+            path.setPathStructure(base.getPathStructure());
+        }
+        String lastId = null;
+        for (Object entry : tail) {
+            Event e = Event.of(entry);
+            lastId = e.id();
+            switch (e.type()) {
+                case START -> {
+                    questionnaireId = e.key().isEmpty() ? null : e.key();
+                    answers.clear();
+                    path.setPath(null);
+                }
+                case ANSWER -> answers.put(e.key(), JSON.deserialize(e.data()));
+                case PRUNE -> {
+                    if (JSON.deserialize(e.data()) instanceof List<?> codes) {
+                        for (Object code : codes) answers.remove(String.valueOf(code));
+                    }
+                }
+                case PATH -> {
+                    path.setPath(null);
+                    if (e.data().length > 0) ValueSessionStore.readPath(path, JSON.deserialize(e.data()));
+                }
+                default -> { }
+            }
+        }
+        List<Map<String, Object>> list = new ArrayList<>(answers.size());
+        for (Map.Entry<String, Object> a : answers.entrySet()) {
+            Map<String, Object> m = new HashMap<>(4);
+            m.put("questionCode", a.getKey());
+            m.put("value", a.getValue());
+            list.add(m);
+        }
+        SessionState state = new SessionState(questionnaireId, list);
+        state.setVersion(ValueSessionStore.parseVersion(meta));
+        state.setPath(path.getPath());
+        state.setPathStructure(path.getPathStructure());
+        return new Replayed(state, lastId, tail.size());
+    }
+
+    /**
+     * Estado reconstruído, id do último evento aplicado (null = apenas snapshot) e tamanho da cauda.
+     */
+    record Replayed(SessionState state, String lastId, int tail) {
+    }
+
+    /**
+     * Evento do stream no formato retornado pelo Redis: [id, [campo, valor, ...]].
+     */
+    record Event(String id, long version, String type, String key, byte[] data) {
+
+        static Event of(Object entry) {
+            List<?> parts = (List<?>) entry;
+            List<?> fields = (List<?>) parts.get(1);
+            Map<String, byte[]> values = new HashMap<>(8);
+            for (int i = 0; i + 1 < fields.size(); i += 2) {
+                values.put(new String((byte[]) fields.get(i), StandardCharsets.UTF_8), (byte[]) fields.get(i + 1));
+            }
+            byte[] version = values.get("v");
+            return new Event(new String((byte[]) parts.get(0), StandardCharsets.US_ASCII),
+                    version == null ? 0 : Long.parseLong(new String(version, StandardCharsets.US_ASCII)),
+                    string(values.get("e")), string(values.get("k")), values.getOrDefault("d", EMPTY));
+        }
+
+        private static String string(byte[] bytes) {
+            return bytes == null ? "" : new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void event(List<byte[]> args, String type, String key, byte[] data) {
+        args.add(ascii(type));
+        args.add(utf8(key));
+        args.add(data);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
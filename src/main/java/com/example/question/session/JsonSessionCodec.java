@@ -0,0 +1,38 @@
+package com.example.question.session;
+
+import com.example.question.model.SessionState;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+/**
+ * Formato original: {@code {questionnaire: {questionnaireId, answers: [...]}}} serializado pelo
+ * {@link GenericJackson2JsonRedisSerializer} (com metadados {@code @class}).
+ */
+public class JsonSessionCodec implements SessionCodec {
+
+    private final GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer();
+    private final SessionCodec binaryReader;
+
+    public JsonSessionCodec() {
+        this(null);
+    }
+
+    /**
+     * @param binaryReader codec usado para ler valores já gravados no formato binário (ex.: após voltar
+     *                     de {@code session.codec=binary} para json); pode ser null
+     */
+    public JsonSessionCodec(SessionCodec binaryReader) {
+        this.binaryReader = binaryReader;
+    }
+
+    @Override
+    public byte[] encode(SessionState state) {
+        return serializer.serialize(ValueSessionStore.toValue(state));
+    }
+
+    @Override
+    public SessionState decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) return null;
+        if (binaryReader != null && BinarySessionCodec.isBinary(bytes)) return binaryReader.decode(bytes);
+        return ValueSessionStore.fromValue(serializer.deserialize(bytes));
+    }
+}
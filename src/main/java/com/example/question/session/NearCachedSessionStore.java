@@ -0,0 +1,158 @@
+package com.example.question.session;
+
+import com.example.question.model.CompletedSession;
+import com.example.question.model.SessionState;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Near cache em memória na frente do armazenamento Redis ({@code session.near-cache.enabled=true}).
+ *
+ * Guarda o último estado completo de cada sessão servida por este nó: passos consecutivos da mesma
+ * sessão no mesmo nó não leem o Redis. Gravações bem-sucedidas atualizam a entrada local com a versão
+ * nova; gravações de outros nós chegam como avisos de {@link SessionInvalidation} e descartam a entrada.
+ *
+ * Uma entrada desatualizada (aviso perdido durante uma reconexão) nunca causa perda de dados: a
+ * gravação é condicionada à versão e, em caso de conflito, a entrada é descartada e o passo relido do
+ * Redis. O {@code expire-after-write} limita por quanto tempo passos só de leitura podem ver dados antigos.
+ */
+@Primary
+@Component
+@ConditionalOnProperty(name = "session.near-cache.enabled", havingValue = "true")
+public class NearCachedSessionStore implements SessionStore {
+
+    /** Nome do bean do armazenamento Redis ativo (value ou hash), envolvido por este cache. */
+    public static final String BACKING_STORE = "redisSessionStore";
+
+    @Autowired
+    @Qualifier(BACKING_STORE)
+    private SessionStore delegate;
+
+    @Autowired
+    private SessionInvalidation invalidation;
+
+    private final Cache<String, SessionState> cache;
+
+    public NearCachedSessionStore(@Value("${session.near-cache.max-sessions:10000}") long maxSessions,
+                                  @Value("${session.near-cache.expire-after-write:5m}") Duration expireAfterWrite) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSessions)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @PostConstruct
+    void subscribe() {
+        invalidation.onInvalidate(cache::invalidate);
+    }
+
+    @Override
+    public SessionState load(String sessionId) {
+        SessionState cached = cache.getIfPresent(sessionId);
+        if (cached != null) return copy(cached);
+        SessionState loaded = delegate.load(sessionId);
+        if (loaded != null && loaded.isComplete()) cache.put(sessionId, copy(loaded));
+        return loaded;
+    }
+
+    @Override
+    public SessionState load(String sessionId, Collection<String> questionCodes) {
+        // o estado completo em cache atende qualquer leitura parcial
+        SessionState cached = cache.getIfPresent(sessionId);
+        if (cached != null) return copy(cached);
+        return delegate.load(sessionId, questionCodes);
+    }
+
+    @Override
+    public Map<String, SessionState> loadAll(Collection<String> sessionIds) {
+        Map<String, SessionState> states = new HashMap<>(sessionIds.size() * 2);
+        List<String> missing = new ArrayList<>();
+        for (String sessionId : sessionIds) {
+            SessionState cached = cache.getIfPresent(sessionId);
+            if (cached != null) states.put(sessionId, copy(cached));
+            else missing.add(sessionId);
+        }
+        if (missing.isEmpty()) return states;
+        Map<String, SessionState> loaded = delegate.loadAll(missing);
+        for (Map.Entry<String, SessionState> e : loaded.entrySet()) {
+            if (e.getValue() != null && e.getValue().isComplete()) cache.put(e.getKey(), copy(e.getValue()));
+        }
+        states.putAll(loaded);
+        return states;
+    }
+
+    @Override
+    public boolean save(String sessionId, String questionnaireId, List<Map<String, Object>> merged, SessionChanges changes) {
+        boolean saved = delegate.save(sessionId, questionnaireId, merged, changes);
+        if (saved && changes.isMergedComplete() && changes.getExpectedVersion() != SessionChanges.ANY_VERSION) {
+            SessionState state = new SessionState(questionnaireId, new ArrayList<>(merged));
+            state.setVersion(changes.getExpectedVersion() + 1);
+            // o ramo informado nas mudanças é o gravado (ou o que já estava salvo, quando inalterado)
+            state.setPath(changes.getPath());
+            state.setPathStructure(changes.getPathStructure());
+            cache.put(sessionId, state);
+        } else {
+            // conflito ou versão desconhecida: a próxima leitura vai ao Redis
+            cache.invalidate(sessionId);
+        }
+        return saved;
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        cache.invalidate(sessionId);
+        delegate.delete(sessionId);
+    }
+
+    @Override
+    public boolean complete(String sessionId, long expectedVersion, CompletedSession completed) {
+        cache.invalidate(sessionId);
+        return delegate.complete(sessionId, expectedVersion, completed);
+    }
+
+    @Override
+    public CompletedSession loadCompleted(String sessionId) {
+        return delegate.loadCompleted(sessionId);
+    }
+
+    @Override
+    public Map<String, CompletedSession> loadAllCompleted(Collection<String> sessionIds) {
+        return delegate.loadAllCompleted(sessionIds);
+    }
+
+    @Override
+    public void scanIds(boolean completed, int batchSize, Consumer<List<String>> batches) {
+        delegate.scanIds(completed, batchSize, batches);
+    }
+
+    public Cache<String, SessionState> getCache() {
+        return cache;
+    }
+
+    /**
+     * O controller altera a lista de respostas lida; a entrada em cache não pode ser compartilhada.
+     */
+    private static SessionState copy(SessionState state) {
+        SessionState copy = new SessionState(state.getQuestionnaireId(), new ArrayList<>(state.getAnswers()));
+        copy.setVersion(state.getVersion());
+        copy.setPath(state.getPath());
+        copy.setPathStructure(state.getPathStructure());
+        return copy;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.question.session;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Alterações de um passo sobre o estado salvo da sessão: respostas incluídas/alteradas e
+ * respostas descartadas (subtree podada). Permite que armazenamentos por campo gravem apenas
+ * o que mudou em vez de regravar a sessão inteira.
+ */
+public class SessionChanges {
+
+    /** Versão esperada que desabilita a verificação (gravação incondicional). */
+    public static final long ANY_VERSION = -1;
+
+    private final Map<String, Object> upserts = new LinkedHashMap<>();
+    private final Set<String> removals = new LinkedHashSet<>();
+    private boolean replace;
+    private long expectedVersion = ANY_VERSION;
+    private boolean mergedComplete = true;
+
+    // ramo ativo resultante (null = desconhecido) e se ele difere do salvo
+    private List<String> path;
+    private int pathStructure;
+    private boolean pathChanged;
+
+    /**
+     * Alterações que substituem todo o estado salvo pelas respostas informadas.
+     */
+    public static SessionChanges replaceAll(List<Map<String, Object>> answers) {
+        SessionChanges changes = new SessionChanges();
+        changes.replace = true;
+        if (answers != null) {
+            for (Map<String, Object> a : answers) {
+                Object qc = a.get("questionCode");
+                if (qc != null) changes.upserts.put(String.valueOf(qc), a.get("value"));
+            }
+        }
+        return changes;
+    }
+
+    public SessionChanges put(String questionCode, Object value) {
+        removals.remove(questionCode);
+        upserts.put(questionCode, value);
+        return this;
+    }
+
+    public SessionChanges remove(Collection<String> questionCodes) {
+        for (String code : questionCodes) {
+            if (!upserts.containsKey(code)) removals.add(code);
+        }
+        return this;
+    }
+
+    public SessionChanges markReplace() {
+        this.replace = true;
+        return this;
+    }
+
+    /**
+     * Condiciona a gravação à versão lida da sessão (0 quando a sessão não existia).
+     */
+    public SessionChanges expectVersion(long version) {
+        this.expectedVersion = version;
+        return this;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    /**
+     * Informa se o estado resultante passado junto com estas alterações contém todas as respostas
+     * da sessão (false quando o passo partiu de uma leitura parcial).
+     */
+    public SessionChanges mergedComplete(boolean complete) {
+        this.mergedComplete = complete;
+        return this;
+    }
+
+    public boolean isMergedComplete() {
+        return mergedComplete;
+    }
+
+    /**
+     * Ramo ativo resultante do passo. `changed` indica que difere do ramo salvo; com `codes` null e
+     * `changed` true o ramo salvo é descartado (será recalculado na próxima leitura completa).
+     */
+    public SessionChanges path(List<String> codes, int structure, boolean changed) {
+        this.path = codes;
+        this.pathStructure = structure;
+        this.pathChanged = changed;
+        return this;
+    }
+
+    public List<String> getPath() {
+        return path;
+    }
+
+    public int getPathStructure() {
+        return pathStructure;
+    }
+
+    public boolean isPathChanged() {
+        return pathChanged;
+    }
+
+    public Map<String, Object> getUpserts() {
+        return Collections.unmodifiableMap(upserts);
+    }
+
+    public Set<String> getRemovals() {
+        return Collections.unmodifiableSet(removals);
+    }
+
+    /**
+     * Indica que o estado anterior deve ser descartado por completo (ex.: troca de questionário).
+     */
+    public boolean isReplace() {
+        return replace;
+    }
+
+    public boolean isEmpty() {
+        return !replace && upserts.isEmpty() && removals.isEmpty() && !pathChanged;
+    }
+}
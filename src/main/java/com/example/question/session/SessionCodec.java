@@ -0,0 +1,17 @@
+package com.example.question.session;
+
+import com.example.question.model.SessionState;
+
+/**
+ * Formato de serialização do estado da sessão gravado no Redis no modo de armazenamento por valor.
+ * Implementações devem ler também os formatos anteriores durante a migração.
+ */
+public interface SessionCodec {
+
+    byte[] encode(SessionState state);
+
+    /**
+     * Decodifica o valor salvo ou retorna null quando ele não representa uma sessão válida.
+     */
+    SessionState decode(byte[] bytes);
+}
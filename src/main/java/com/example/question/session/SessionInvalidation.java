@@ -0,0 +1,71 @@
+package com.example.question.session;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Avisos de alteração de sessão entre nós, usados pelo near cache ({@link NearCachedSessionStore}).
+ *
+ * Os scripts de gravação publicam {@code <nodeId> <sessionId>} em {@value #CHANNEL} na mesma execução
+ * que altera a sessão; cada nó descarta a entrada local ao receber avisos de outros nós. Com o near
+ * cache desabilitado o payload é vazio e nada é publicado.
+ */
+@Component
+public class SessionInvalidation implements MessageListener {
+
+    public static final String CHANNEL = "session:invalidate";
+
+    private static final byte[] NONE = new byte[0];
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicLong received = new AtomicLong();
+    private volatile Consumer<String> listener = sessionId -> { };
+
+    @Value("${session.near-cache.enabled:false}")
+    private boolean enabled;
+
+    @Autowired
+    @Qualifier("sessionRedisTemplate")
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    /**
+     * Payload do aviso para os scripts de gravação (vazio quando desabilitado).
+     */
+    byte[] payload(String sessionId) {
+        return enabled ? (nodeId + " " + sessionId).getBytes(StandardCharsets.UTF_8) : NONE;
+    }
+
+    /**
+     * Publica o aviso para gravações feitas fora dos scripts (ex.: remoção da sessão).
+     */
+    void publish(String sessionId) {
+        if (enabled) redisTemplate.convertAndSend(CHANNEL, payload(sessionId));
+    }
+
+    void onInvalidate(Consumer<String> listener) {
+        this.listener = listener;
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int sep = body.indexOf(' ');
+        if (sep < 0 || body.regionMatches(0, nodeId, 0, sep) && sep == nodeId.length()) return;
+        received.incrementAndGet();
+        listener.accept(body.substring(sep + 1));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.question.session;
+
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Varredura das chaves de sessão com {@code SCAN} em blocos, comum aos modos de armazenamento
+ * (ver {@link SessionStore#scanIds}). No Redis Cluster o SCAN é feito em cada master, um após o outro.
+ */
+final class SessionKeyScanner {
+
+    private SessionKeyScanner() {
+    }
+
+    /**
+     * Registros de sessões concluídas (qualquer modo).
+     */
+    static void scanCompleted(RedisTemplate<String, byte[]> redisTemplate, int batchSize, Consumer<List<String>> batches) {
+        scan(redisTemplate, SessionKeys.COMPLETED_PREFIX + "*", batchSize,
+                key -> SessionKeys.sessionId(key.substring(SessionKeys.COMPLETED_PREFIX.length())), batches);
+    }
+
+    /**
+     * Sessões vivas dos modos value e journal, identificadas pela chave de versão.
+     */
+    static void scanVersioned(RedisTemplate<String, byte[]> redisTemplate, int batchSize, Consumer<List<String>> batches) {
+        scan(redisTemplate, "*" + SessionKeys.VERSION_SUFFIX, batchSize,
+                key -> key.startsWith(SessionKeys.HASH_PREFIX) ? null
+                        : SessionKeys.sessionId(key.substring(0, key.length() - SessionKeys.VERSION_SUFFIX.length())), batches);
+    }
+
+    /**
+     * Percorre as chaves do padrão; `toId` converte a chave no sessionId ou retorna null para ignorá-la.
+     * O COUNT do SCAN acompanha o tamanho do bloco, de modo que cada ida ao Redis rende perto de um bloco.
+     */
+    static void scan(RedisTemplate<String, byte[]> redisTemplate, String pattern, int batchSize,
+                     Function<String, String> toId, Consumer<List<String>> batches) {
+        redisTemplate.execute((RedisCallback<Void>) connection -> {
+            Batcher batcher = new Batcher(toId, batchSize, batches);
+            forEachKey(connection, pattern, batchSize, batcher);
+            batcher.flush();
+            return null;
+        });
+    }
+
+    /**
+     * Agrupa os ids das chaves visitadas em blocos de `batchSize`, entregues à medida que enchem.
+     */
+    private static final class Batcher implements Consumer<String> {
+        private final Function<String, String> toId;
+        private final int batchSize;
+        private final Consumer<List<String>> batches;
+        private List<String> batch;
+
+        Batcher(Function<String, String> toId, int batchSize, Consumer<List<String>> batches) {
+            this.toId = toId;
+            this.batchSize = batchSize;
+            this.batches = batches;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public void accept(String key) {
+            String id = toId.apply(key);
+            if (id == null) return;
+            batch.add(id);
+            if (batch.size() == batchSize) flush();
+        }
+
+        void flush() {
+            if (batch.isEmpty()) return;
+            batches.accept(batch);
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    /**
+     * SCAN do padrão na conexão; no cluster, em cada master.
+     */
+    static void forEachKey(RedisConnection connection, String pattern, int count, Consumer<String> action) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(count).build();
+        if (connection instanceof RedisClusterConnection cluster) {
+            for (RedisClusterNode node : cluster.clusterGetNodes()) {
+                if (!node.isMaster()) continue;
+                try (Cursor<byte[]> cursor = cluster.scan(node, options)) {
+                    while (cursor.hasNext()) action.accept(new String(cursor.next(), StandardCharsets.UTF_8));
+                }
+            }
+            return;
+        }
+        try (Cursor<byte[]> cursor = connection.keyCommands().scan(options)) {
+            while (cursor.hasNext()) action.accept(new String(cursor.next(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.question.session;
+
+/**
+ * Nomes das chaves Redis usadas por uma sessão. Centralizado para que todos os modos de
+ * armazenamento (e utilitários como exportação e estatísticas) concordem sobre o layout.
+ *
+ * Com {@code session.keys.hash-tags=true} (obrigatório no Redis Cluster) o sessionId entra nas chaves
+ * como hash tag, {@code {sessionId}}: valor, versão, hash, diário e registro de conclusão da mesma sessão
+ * caem no mesmo slot, e os scripts que gravam várias delas continuam atômicos. As chaves sem hash tag
+ * (layout legado, padrão) não são renomeadas ao ligar a opção; ela vale para uma base nova.
+ *
+ * Como o valor da sessão usa o próprio sessionId como chave, ids com {@code :}, {@code {}} ou {@code }}
+ * poderiam apontar para chaves de outra sessão ou de outro espaço ({@code x:v}, {@code session:done:x},
+ * {@code analytics:1}); {@link #isValidId(String)} os recusa antes de qualquer acesso ao Redis.
+ */
+public final class SessionKeys {
+
+    static final String VERSION_SUFFIX = ":v";
+    static final String HASH_PREFIX = "session:";
+    static final String COMPLETED_PREFIX = "session:done:";
+    static final String JOURNAL_PREFIX = "session:log:";
+
+    // definido uma única vez na inicialização (RedisConfig), antes de qualquer acesso às sessões
+    private static volatile boolean hashTags;
+
+    private SessionKeys() {
+    }
+
+    /**
+     * Indica se o sessionId pode ser usado nas chaves: não vazio e sem separador ({@code :}) nem
+     * delimitadores de hash tag ({@code {}}).
+     */
+    public static boolean isValidId(String sessionId) {
+        if (sessionId == null || sessionId.isEmpty()) return false;
+        for (int i = 0; i < sessionId.length(); i++) {
+            char c = sessionId.charAt(i);
+            if (c == ':' || c == '{' || c == '}') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Liga ou desliga as hash tags no nome das chaves de sessão.
+     */
+    public static void useHashTags(boolean enabled) {
+        hashTags = enabled;
+    }
+
+    public static boolean hashTags() {
+        return hashTags;
+    }
+
+    /** Valor único da sessão (modo value); mantém o nome legado, igual ao sessionId (entre chaves com hash tags). */
+    public static String value(String sessionId) {
+        return tag(sessionId);
+    }
+
+    /** Versão da sessão no modo value (incrementada a cada gravação). */
+    public static String version(String sessionId) {
+        return tag(sessionId) + VERSION_SUFFIX;
+    }
+
+    /** Hash da sessão no modo hash. */
+    public static String hash(String sessionId) {
+        return HASH_PREFIX + tag(sessionId);
+    }
+
+    /** Diário de eventos da sessão no modo journal (Redis Stream). */
+    public static String journal(String sessionId) {
+        return JOURNAL_PREFIX + tag(sessionId);
+    }
+
+    /** Registro compacto de sessão concluída (qualquer modo). */
+    public static String completed(String sessionId) {
+        return COMPLETED_PREFIX + tag(sessionId);
+    }
+
+    /**
+     * SessionId a partir do trecho da chave que o contém (sem prefixo e sufixo), retirando a hash tag.
+     */
+    static String sessionId(String tagged) {
+        if (hashTags && tagged.length() >= 2 && tagged.charAt(0) == '{' && tagged.charAt(tagged.length() - 1) == '}') {
+            return tagged.substring(1, tagged.length() - 1);
+        }
+        return tagged;
+    }
+
+    private static String tag(String sessionId) {
+        return hashTags ? "{" + sessionId + "}" : sessionId;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.question.session;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contagem e tamanho estimado das sessões no Redis, para planejamento de capacidade.
+ *
+ * Percorre as chaves com {@code SCAN} (sem bloquear o servidor) e mede com {@code MEMORY USAGE}
+ * apenas uma amostra das primeiras chaves de cada tipo; o total de bytes é extrapolado pela média.
+ */
+@Component
+public class SessionStats {
+
+    // via script para ser roteado pelo slot da chave também no Redis Cluster
+    private static final RedisScript<Long> MEMORY_USAGE = new DefaultRedisScript<>(
+            "return redis.call('MEMORY', 'USAGE', KEYS[1])", Long.class);
+
+    @Autowired
+    @Qualifier("sessionRedisTemplate")
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    @Value("${session.storage:value}")
+    private String storage;
+
+    @Value("${session.stats.sample:1000}")
+    private int sample;
+
+    public Map<String, Object> collect() {
+        return redisTemplate.execute((RedisCallback<Map<String, Object>>) connection -> {
+            Tally live = new Tally();
+            Tally completed = new Tally();
+            if ("hash".equals(storage)) {
+                scan(connection, SessionKeys.HASH_PREFIX + "*", key -> {
+                    if (key.startsWith(SessionKeys.COMPLETED_PREFIX) || key.startsWith(SessionSymbolTable.KEY_PREFIX)
+                            || key.startsWith(SessionKeys.JOURNAL_PREFIX)) return;
+                    live.add(key);
+                });
+            } else {
+                // nos modos value e journal a chave da sessão (snapshot) é o próprio sessionId; a chave de versão identifica a sessão
+                scan(connection, "*" + SessionKeys.VERSION_SUFFIX, key -> {
+                    String sessionId = SessionKeys.sessionId(key.substring(0, key.length() - SessionKeys.VERSION_SUFFIX.length()));
+                    if ("journal".equals(storage)) live.add(key, SessionKeys.value(sessionId), SessionKeys.journal(sessionId));
+                    else live.add(key, SessionKeys.value(sessionId));
+                });
+            }
+            scan(connection, SessionKeys.COMPLETED_PREFIX + "*", key -> completed.add(key));
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("storage", storage);
+            body.put("live", live.toMap());
+            body.put("completed", completed.toMap());
+            return body;
+        });
+    }
+
+    private void scan(RedisConnection connection, String pattern, java.util.function.Consumer<String> action) {
+        SessionKeyScanner.forEachKey(connection, pattern, 1000, action);
+    }
+
+    private final class Tally {
+        long count;
+        long sampled;
+        long sampledBytes;
+
+        void add(String... keys) {
+            count++;
+            if (sampled >= sample) return;
+            for (String key : keys) {
+                Long usage = redisTemplate.execute(MEMORY_USAGE, List.of(key));
+                if (usage != null) sampledBytes += usage;
+            }
+            sampled++;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", count);
+            m.put("sampled", sampled);
+            m.put("estimatedBytes", sampled == 0 ? 0 : sampledBytes * count / sampled);
+            return m;
+        }
+    }
+}
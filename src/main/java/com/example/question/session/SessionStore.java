@@ -0,0 +1,81 @@
+package com.example.question.session;
+
+import com.example.question.model.CompletedSession;
+import com.example.question.model.SessionState;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Armazenamento do estado das sessões (questionário + respostas) no Redis.
+ * A implementação é escolhida pela propriedade {@code session.storage}.
+ */
+public interface SessionStore {
+
+    /**
+     * Lê o estado completo da sessão ou null se não existir.
+     */
+    SessionState load(String sessionId);
+
+    /**
+     * Lê o estado da sessão trazendo ao menos as respostas das perguntas informadas. Implementações
+     * que conseguem ler campos isolados retornam um estado com {@code complete = false}.
+     */
+    default SessionState load(String sessionId, Collection<String> questionCodes) {
+        return load(sessionId);
+    }
+
+    /**
+     * Lê o estado completo de várias sessões de uma vez (sincronização em lote). O mapa retornado tem
+     * uma entrada para cada id, com valor null para sessões inexistentes. Implementações Redis agrupam
+     * as leituras em um único MGET ou pipeline.
+     */
+    default Map<String, SessionState> loadAll(Collection<String> sessionIds) {
+        Map<String, SessionState> states = new HashMap<>();
+        for (String sessionId : sessionIds) states.put(sessionId, load(sessionId));
+        return states;
+    }
+
+    /**
+     * Persiste o passo em uma única ida ao Redis, condicionado à versão lida
+     * ({@link SessionChanges#getExpectedVersion()}). `merged` é o estado resultante (quando o estado
+     * lido estava completo) e `changes` descreve o que mudou em relação ao estado lido.
+     * Retorna false quando outra gravação alterou a sessão desde a leitura; o chamador deve reler e refazer o passo.
+     */
+    boolean save(String sessionId, String questionnaireId, List<Map<String, Object>> merged, SessionChanges changes);
+
+    void delete(String sessionId);
+
+    /**
+     * Substitui a sessão pelo registro compacto de sessão concluída, retido por
+     * {@code session.ttl.completed}. O estado vivo da sessão é removido. Como em {@link #save}, só é
+     * aplicado se a sessão ainda estiver em `expectedVersion` ({@link SessionChanges#ANY_VERSION} = qualquer);
+     * retorna false quando outra gravação a alterou, e o chamador deve reler e refazer o passo.
+     */
+    boolean complete(String sessionId, long expectedVersion, CompletedSession completed);
+
+    /**
+     * Lê o registro de sessão concluída ou null se não existir (ou já tiver expirado).
+     */
+    CompletedSession loadCompleted(String sessionId);
+
+    /**
+     * Lê vários registros de sessões concluídas de uma vez (exportação); valor null para ids sem registro.
+     */
+    default Map<String, CompletedSession> loadAllCompleted(Collection<String> sessionIds) {
+        Map<String, CompletedSession> records = new HashMap<>();
+        for (String sessionId : sessionIds) records.put(sessionId, loadCompleted(sessionId));
+        return records;
+    }
+
+    /**
+     * Percorre os ids das sessões vivas ({@code completed = false}) ou concluídas, entregando blocos de até
+     * `batchSize` ids na ordem da varredura. Implementações Redis usam {@code SCAN}, que não bloqueia o
+     * servidor; como no próprio SCAN, um id pode ser entregue mais de uma vez se o keyspace for
+     * redimensionado durante a varredura. O bloco só é válido durante a chamada de `batches`.
+     */
+    void scanIds(boolean completed, int batchSize, Consumer<List<String>> batches);
+}
@@ -0,0 +1,117 @@
+package com.example.question.session;
+
+import com.example.question.service.CompiledQuestionnaire;
+import com.example.question.service.QuestionnaireService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * Resolve as tabelas de códigos usadas pelo {@link BinarySessionCodec}.
+ *
+ * Cada versão compilada do questionário publica sua tabela no Redis
+ * ({@code session:symbols:<questionnaireId>:<fingerprint>}) na primeira vez em que é usada para gravar
+ * uma sessão. Assim, sessões gravadas antes de um reload (ou por outra instância) continuam legíveis
+ * mesmo depois que a definição mudar.
+ *
+ * As chaves não têm TTL: com {@code maxmemory} o Redis deve usar uma política {@code volatile-*} (ou
+ * {@code noeviction}), que só despeja chaves com expiração. Se mesmo assim a chave sumir, a tabela é
+ * reconstruída a partir de qualquer snapshot em memória com o mesmo fingerprint e publicada de novo; a
+ * versão atual também é republicada periodicamente enquanto grava sessões.
+ */
+public class SessionSymbolTable {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionSymbolTable.class);
+
+    static final String KEY_PREFIX = "session:symbols:";
+    private static final Duration REPUBLISH_INTERVAL = Duration.ofMinutes(1);
+
+    private final ObjectProvider<QuestionnaireService> questionnaireService;
+    private final RedisTemplate<String, byte[]> redisTemplate;
+
+    // tabela por versão compilada (chave fraca: some junto com o snapshot)
+    private final Cache<CompiledQuestionnaire, SessionSymbols> bySnapshot = Caffeine.newBuilder().weakKeys().build();
+    // tabelas já resolvidas por questionnaireId + fingerprint
+    private final Cache<String, SessionSymbols> byFingerprint = Caffeine.newBuilder().maximumSize(256).build();
+    // tabelas garantidas no Redis há menos de REPUBLISH_INTERVAL
+    private final Cache<String, Boolean> published = Caffeine.newBuilder().expireAfterWrite(REPUBLISH_INTERVAL).build();
+
+    public SessionSymbolTable(ObjectProvider<QuestionnaireService> questionnaireService, RedisTemplate<String, byte[]> redisTemplate) {
+        this.questionnaireService = questionnaireService;
+        this.redisTemplate = redisTemplate;
+    }
+
+    static String key(String questionnaireId, int fingerprint) {
+        return KEY_PREFIX + questionnaireId + ":" + Integer.toHexString(fingerprint);
+    }
+
+    /**
+     * Tabela da versão atual do questionário, ou null quando o questionário não existe.
+     */
+    SessionSymbols forEncoding(String questionnaireId) {
+        if (questionnaireId == null) return null;
+        CompiledQuestionnaire snapshot = snapshot(questionnaireId);
+        if (snapshot == null) return null;
+        return ensurePublished(bySnapshot.get(snapshot, SessionSymbols::of));
+    }
+
+    /**
+     * Tabela da versão com o fingerprint informado: em memória, a versão atual, a publicada no Redis ou,
+     * se a chave tiver sumido, reconstruída de um snapshot ainda em memória. Null só quando nenhuma
+     * dessas fontes conhece o fingerprint.
+     */
+    SessionSymbols forDecoding(String questionnaireId, int fingerprint) {
+        if (questionnaireId == null || questionnaireId.isEmpty()) return null;
+        String key = key(questionnaireId, fingerprint);
+        SessionSymbols cached = byFingerprint.getIfPresent(key);
+        if (cached != null) return ensurePublished(cached);
+        CompiledQuestionnaire snapshot = snapshot(questionnaireId);
+        if (snapshot != null && snapshot.fingerprint() == fingerprint) {
+            return ensurePublished(bySnapshot.get(snapshot, SessionSymbols::of));
+        }
+        byte[] stored = loadStored(key);
+        if (stored != null) {
+            SessionSymbols symbols = SessionSymbols.deserialize(stored);
+            published.put(key, Boolean.TRUE);
+            byFingerprint.put(key, symbols);
+            return symbols;
+        }
+        for (var retained : bySnapshot.asMap().entrySet()) {
+            SessionSymbols symbols = retained.getValue();
+            if (symbols.fingerprint == fingerprint && questionnaireId.equals(symbols.questionnaireId)) {
+                log.warn("symbol table {} not found in Redis, republishing from a retained snapshot", key);
+                published.invalidate(key);
+                return ensurePublished(symbols);
+            }
+        }
+        log.warn("symbol table {} not found", key);
+        return null;
+    }
+
+    private SessionSymbols ensurePublished(SessionSymbols symbols) {
+        String key = key(symbols.questionnaireId, symbols.fingerprint);
+        published.get(key, k -> {
+            storeIfAbsent(k, symbols.serialize());
+            return Boolean.TRUE;
+        });
+        byFingerprint.put(key, symbols);
+        return symbols;
+    }
+
+    CompiledQuestionnaire snapshot(String questionnaireId) {
+        return questionnaireService.getObject().snapshot(questionnaireId);
+    }
+
+    byte[] loadStored(String key) {
+        return redisTemplate.opsForValue().get(key);
+    }
+
+    void storeIfAbsent(String key, byte[] table) {
+        redisTemplate.opsForValue().setIfAbsent(key, table);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.question.session;
+
+import com.example.question.model.Answer;
+import com.example.question.model.Question;
+import com.example.question.service.CompiledQuestionnaire;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tabela de códigos (perguntas e respostas por id) de uma versão do questionário, identificada pelo
+ * {@link CompiledQuestionnaire#fingerprint()}. O codec binário grava ids no lugar dos códigos e usa
+ * esta tabela para traduzi-los de volta, inclusive para sessões gravadas com versões anteriores.
+ */
+final class SessionSymbols {
+
+    final String questionnaireId;
+    final int fingerprint;
+    final String[] questionCodes;
+    final String[][] answerCodes;
+    private final Map<String, Integer> questionIndex;
+    private final List<Map<String, Integer>> answerIndex;
+
+    private SessionSymbols(String questionnaireId, int fingerprint, String[] questionCodes, String[][] answerCodes) {
+        this.questionnaireId = questionnaireId;
+        this.fingerprint = fingerprint;
+        this.questionCodes = questionCodes;
+        this.answerCodes = answerCodes;
+        this.questionIndex = new HashMap<>(questionCodes.length * 2);
+        this.answerIndex = new ArrayList<>(questionCodes.length);
+        for (int id = 0; id < questionCodes.length; id++) {
+            if (questionCodes[id] != null) questionIndex.putIfAbsent(questionCodes[id], id);
+            Map<String, Integer> idx = new HashMap<>();
+            for (int i = 0; i < answerCodes[id].length; i++) {
+                if (answerCodes[id][i] != null) idx.putIfAbsent(answerCodes[id][i], i);
+            }
+            answerIndex.add(idx);
+        }
+    }
+
+    static SessionSymbols of(CompiledQuestionnaire questionnaire) {
+        int n = questionnaire.size();
+        String[] codes = new String[n];
+        String[][] answers = new String[n][];
+        for (int id = 0; id < n; id++) {
+            codes[id] = questionnaire.code(id);
+            Question q = questionnaire.question(id);
+            List<Answer> list = q.getAnswers();
+            answers[id] = new String[list == null ? 0 : list.size()];
+            for (int i = 0; i < answers[id].length; i++) answers[id][i] = list.get(i).getCode();
+        }
+        return new SessionSymbols(questionnaire.getQuestionnaireId(), questionnaire.fingerprint(), codes, answers);
+    }
+
+    /** Id da pergunta ou -1. */
+    int questionId(String code) {
+        Integer id = questionIndex.get(code);
+        return id == null ? -1 : id;
+    }
+
+    /** Índice da resposta da pergunta ou -1. */
+    int answerIndex(int questionId, String answerCode) {
+        Integer idx = answerIndex.get(questionId).get(answerCode);
+        return idx == null ? -1 : idx;
+    }
+
+    byte[] serialize() {
+        VarintWriter w = new VarintWriter(questionCodes.length * 16);
+        w.writeString(questionnaireId == null ? "" : questionnaireId);
+        w.writeInt32(fingerprint);
+        w.writeVarint(questionCodes.length);
+        for (int id = 0; id < questionCodes.length; id++) {
+            w.writeString(questionCodes[id] == null ? "" : questionCodes[id]);
+            w.writeVarint(answerCodes[id].length);
+            for (String a : answerCodes[id]) w.writeString(a == null ? "" : a);
+        }
+        return w.toByteArray();
+    }
+
+    static SessionSymbols deserialize(byte[] bytes) {
+        VarintReader r = new VarintReader(bytes, 0);
+        String questionnaireId = r.readString();
+        int fingerprint = r.readInt32();
+        int n = r.readVarintInt();
+        String[] codes = new String[n];
+        String[][] answers = new String[n][];
+        for (int id = 0; id < n; id++) {
+            codes[id] = r.readString();
+            answers[id] = new String[r.readVarintInt()];
+            for (int i = 0; i < answers[id].length; i++) answers[id][i] = r.readString();
+        }
+        return new SessionSymbols(questionnaireId, fingerprint, codes, answers);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.question.session;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Expiração das sessões, configurável globalmente e por questionário ({@code session.ttl.*}).
+ *
+ * - sliding: tempo sem gravações até a sessão expirar; renovado a cada passo gravado.
+ * - absolute: limite contado a partir da criação da sessão, independente da atividade.
+ * - completed: retenção do registro compacto de uma sessão concluída.
+ *
+ * Zero (ou negativo) desabilita o respectivo limite.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "session.ttl")
+public class SessionTtl {
+
+    /**
+     * Função Lua compartilhada pelos scripts de gravação: TTL em ms da sessão dado o instante atual,
+     * a criação e os limites (0 = desabilitado). Retorna nil quando a sessão não expira.
+     */
+    static final String LUA_TTL_FUNCTION =
+            "local function session_ttl(now, created, sliding, absolute) "
+                    + "local t = nil "
+                    + "if sliding > 0 then t = sliding end "
+                    + "if absolute > 0 then "
+                    + "  local left = created + absolute - now "
+                    + "  if t == nil or left < t then t = left end "
+                    + "end "
+                    + "if t ~= nil and t < 1 then t = 1 end "
+                    + "return t "
+                    + "end ";
+
+    private Duration sliding = Duration.ofHours(24);
+    private Duration absolute = Duration.ofDays(30);
+    private Duration completed = Duration.ofDays(30);
+
+    /** Limites específicos por questionnaireId; valores ausentes herdam os globais. */
+    private Map<String, Limits> questionnaires = new HashMap<>();
+
+    @Data
+    public static class Limits {
+        private Duration sliding;
+        private Duration absolute;
+        private Duration completed;
+    }
+
+    public Duration sliding(String questionnaireId) {
+        Limits limits = limits(questionnaireId);
+        return limits == null || limits.getSliding() == null ? sliding : limits.getSliding();
+    }
+
+    public Duration absolute(String questionnaireId) {
+        Limits limits = limits(questionnaireId);
+        return limits == null || limits.getAbsolute() == null ? absolute : limits.getAbsolute();
+    }
+
+    public Duration completed(String questionnaireId) {
+        Limits limits = limits(questionnaireId);
+        return limits == null || limits.getCompleted() == null ? completed : limits.getCompleted();
+    }
+
+    private static Duration positive(Duration d) {
+        return d == null || d.isZero() || d.isNegative() ? null : d;
+    }
+
+    private Limits limits(String questionnaireId) {
+        return questionnaireId == null ? null : questionnaires.get(questionnaireId);
+    }
+
+    /**
+     * Argumento para os scripts: milissegundos, com 0 para limite desabilitado.
+     */
+    static String millis(Duration duration) {
+        return positive(duration) == null ? "0" : Long.toString(duration.toMillis());
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.question.session;
+
+import com.example.question.model.CompletedSession;
+import com.example.question.model.SessionState;
+import com.example.question.service.StepMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Armazenamento original: a sessão inteira como um único valor regravado a cada passo, serializado
+ * pelo {@link SessionCodec} configurado ({@code session.codec}).
+ *
+ * A versão da sessão fica em uma chave ao lado ({@link SessionKeys#version(String)}, conteúdo
+ * {@code <versão>:<criação em ms>}): a leitura traz valor e versão em um único {@code MGET} e a gravação é
+ * um compare-and-set em Lua, em uma única ida ao Redis, que também renova a expiração ({@link SessionTtl}).
+ */
+@Component(NearCachedSessionStore.BACKING_STORE)
+@ConditionalOnProperty(name = "session.storage", havingValue = "value", matchIfMissing = true)
+public class ValueSessionStore implements SessionStore {
+
+    // KEYS: valor, versão | ARGV: versão esperada (-1 = qualquer), novo valor, agora, sliding, absolute (ms),
+    // aviso de invalidação (vazio = não publica)
+    private static final RedisScript<Long> SAVE_SCRIPT = new DefaultRedisScript<>(
+            SessionTtl.LUA_TTL_FUNCTION
+                    + "local now = tonumber(ARGV[3]) "
+                    + "local v, created = 0, now "
+                    + "local meta = redis.call('GET', KEYS[2]) "
+                    + "if meta then "
+                    + "  local sep = string.find(meta, ':', 1, true) "
+                    + "  if sep then v = tonumber(string.sub(meta, 1, sep - 1)) created = tonumber(string.sub(meta, sep + 1)) "
+                    + "  else v = tonumber(meta) end "
+                    + "end "
+                    + "if ARGV[1] ~= '-1' and v ~= tonumber(ARGV[1]) then return -1 end "
+                    + "redis.call('SET', KEYS[1], ARGV[2]) "
+                    + "redis.call('SET', KEYS[2], (v + 1) .. ':' .. created) "
+                    + "local ttl = session_ttl(now, created, tonumber(ARGV[4]), tonumber(ARGV[5])) "
+                    + "if ttl then redis.call('PEXPIRE', KEYS[1], ttl) redis.call('PEXPIRE', KEYS[2], ttl) end "
+                    + "if ARGV[6] ~= '' then redis.call('PUBLISH', '" + SessionInvalidation.CHANNEL + "', ARGV[6]) end "
+                    + "return v + 1",
+            Long.class);
+
+    @Autowired
+    @Qualifier("sessionRedisTemplate")
+    private RedisTemplate<String, byte[]> redisTemplate;
+
+    @Autowired
+    private SessionCodec sessionCodec;
+
+    @Autowired
+    private SessionTtl sessionTtl;
+
+    @Autowired
+    private CompletedSessions completedSessions;
+
+    @Autowired
+    private SessionInvalidation invalidation;
+
+    @Autowired
+    private StepMetrics stepMetrics;
+
+    @Override
+    public SessionState load(String sessionId) {
+        List<byte[]> values = redisTemplate.opsForValue().multiGet(List.of(SessionKeys.value(sessionId), SessionKeys.version(sessionId)));
+        if (values == null) return null;
+        SessionState state = sessionCodec.decode(values.get(0));
+        if (state != null) state.setVersion(parseVersion(values.get(1)));
+        return state;
+    }
+
+    /**
+     * Um único MGET com o valor e a versão de todas as sessões.
+     */
+    @Override
+    public Map<String, SessionState> loadAll(Collection<String> sessionIds) {
+        List<String> ids = new ArrayList<>(sessionIds);
+        List<String> keys = new ArrayList<>(ids.size() * 2);
+        for (String id : ids) {
+            keys.add(SessionKeys.value(id));
+            keys.add(SessionKeys.version(id));
+        }
+        Map<String, SessionState> states = new HashMap<>(ids.size() * 2);
+        List<byte[]> values = ids.isEmpty() ? List.of() : redisTemplate.opsForValue().multiGet(keys);
+        for (int i = 0; i < ids.size(); i++) {
+            SessionState state = values == null ? null : sessionCodec.decode(values.get(2 * i));
+            if (state != null) state.setVersion(parseVersion(values.get(2 * i + 1)));
+            states.put(ids.get(i), state);
+        }
+        return states;
+    }
+
+    @Override
+    public boolean save(String sessionId, String questionnaireId, List<Map<String, Object>> merged, SessionChanges changes) {
+        SessionState state = new SessionState(questionnaireId, merged);
+        // o valor é regravado por inteiro: o ramo vai junto (null quando o passo não o conhece)
+        state.setPath(changes.getPath());
+        state.setPathStructure(changes.getPathStructure());
+        byte[] value = sessionCodec.encode(state);
+        stepMetrics.payload(value.length);
+        Long version = redisTemplate.execute(SAVE_SCRIPT, RedisSerializer.byteArray(), null,
+                List.of(SessionKeys.value(sessionId), SessionKeys.version(sessionId)),
+                ascii(Long.toString(changes.getExpectedVersion())), value,
+                ascii(Long.toString(System.currentTimeMillis())),
+                ascii(SessionTtl.millis(sessionTtl.sliding(questionnaireId))),
+                ascii(SessionTtl.millis(sessionTtl.absolute(questionnaireId))),
+                invalidation.payload(sessionId));
+        return version != null && version >= 0;
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        redisTemplate.delete(List.of(SessionKeys.value(sessionId), SessionKeys.version(sessionId)));
+        invalidation.publish(sessionId);
+    }
+
+    @Override
+    public boolean complete(String sessionId, long expectedVersion, CompletedSession completed) {
+        return completedSessions.complete(sessionId, expectedVersion, completed);
+    }
+
+    @Override
+    public CompletedSession loadCompleted(String sessionId) {
+        return completedSessions.load(sessionId);
+    }
+
+    @Override
+    public Map<String, CompletedSession> loadAllCompleted(Collection<String> sessionIds) {
+        return completedSessions.loadAll(sessionIds);
+    }
+
+    @Override
+    public void scanIds(boolean completed, int batchSize, Consumer<List<String>> batches) {
+        if (completed) SessionKeyScanner.scanCompleted(redisTemplate, batchSize, batches);
+        else SessionKeyScanner.scanVersioned(redisTemplate, batchSize, batches);
+    }
+
+    /**
+     * Versão gravada nos metadados da sessão ({@code <versão>} ou {@code <versão>:<criação>}); 0 quando ausente.
+     */
+    static long parseVersion(byte[] bytes) {
+        if (bytes == null) return 0;
+        String meta = new String(bytes, StandardCharsets.US_ASCII);
+        int sep = meta.indexOf(':');
+        return Long.parseLong(sep < 0 ? meta : meta.substring(0, sep));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Monta o valor no formato legado {@code {questionnaire: {questionnaireId, answers, path?}}}.
+     */
+    static Map<String, Object> toValue(SessionState state) {
+        Map<String, Object> toSave = new HashMap<>();
+        Map<String, Object> inner = new HashMap<>();
+        inner.put("questionnaireId", state.getQuestionnaireId());
+        inner.put("answers", state.getAnswers());
+        if (state.getPath() != null) inner.put("path", pathValue(state.getPath(), state.getPathStructure()));
+        toSave.put("questionnaire", inner);
+        return toSave;
+    }
+
+    /**
+     * Representação do ramo ativo nos formatos JSON: {@code {structure, codes}}.
+     */
+    static Map<String, Object> pathValue(List<String> codes, int structure) {
+        Map<String, Object> path = new HashMap<>();
+        path.put("structure", structure);
+        path.put("codes", codes);
+        return path;
+    }
+
+    /**
+     * Aplica ao estado o ramo lido de {@link #pathValue(List, int)}; ignora valores em outro formato.
+     */
+    @SuppressWarnings("unchecked")
+    static void readPath(SessionState state, Object value) {
+        if (!(value instanceof Map<?, ?> m)) return;
+        if (m.get("structure") instanceof Number structure && m.get("codes") instanceof List<?> codes) {
+            state.setPath((List<String>) codes);
+            state.setPathStructure(structure.intValue());
+        }
+    }
+
+    /**
+     * Interpreta o valor no formato legado. Retorna null quando o valor não tem a estrutura esperada.
+     */
+    @SuppressWarnings("unchecked")
+    static SessionState fromValue(Object saved) {
+        if (!(saved instanceof Map)) return null;
+        Map<?, ?> m = (Map<?, ?>) saved;
+        Object q = m.get("questionnaire");
+        if (!(q instanceof Map)) return null;
+        Map<?, ?> qm = (Map<?, ?>) q;
+        Object answers = qm.get("answers");
+        if (!(answers instanceof List)) return null;
+        Object questionnaireId = qm.get("questionnaireId");
+        SessionState state = new SessionState(questionnaireId == null ? null : String.valueOf(questionnaireId),
+                (List<Map<String, Object>>) answers);
+        readPath(state, qm.get("path"));
+        return state;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.question.session;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Leitura dos valores gravados por {@link VarintWriter}. Lança {@link IllegalArgumentException}
+ * quando o conteúdo está truncado ou malformado.
+ */
+final class VarintReader {
+
+    private final byte[] data;
+    private int pos;
+
+    VarintReader(byte[] data, int offset) {
+        this.data = data;
+        this.pos = offset;
+    }
+
+    int readByte() {
+        if (pos >= data.length) throw new IllegalArgumentException("conteúdo binário truncado");
+        return data[pos++] & 0xFF;
+    }
+
+    int readInt32() {
+        return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+    }
+
+    long readVarint() {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IllegalArgumentException("varint malformado");
+    }
+
+    int readVarintInt() {
+        long v = readVarint();
+        if (v < 0 || v > Integer.MAX_VALUE) throw new IllegalArgumentException("varint fora do intervalo");
+        return (int) v;
+    }
+
+    long readZigzag() {
+        long v = readVarint();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    byte[] readBytes() {
+        int len = readVarintInt();
+        if (len > data.length - pos) throw new IllegalArgumentException("conteúdo binário truncado");
+        byte[] bytes = new byte[len];
+        System.arraycopy(data, pos, bytes, 0, len);
+        pos += len;
+        return bytes;
+    }
+
+    String readString() {
+        int len = readVarintInt();
+        if (len > data.length - pos) throw new IllegalArgumentException("conteúdo binário truncado");
+        String s = new String(data, pos, len, StandardCharsets.UTF_8);
+        pos += len;
+        return s;
+    }
+
+    boolean hasRemaining() {
+        return pos < data.length;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.question.session;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Escrita de inteiros em varint (LEB128) e strings com prefixo de tamanho, usada pelos formatos binários.
+ */
+final class VarintWriter {
+
+    private final ByteArrayOutputStream out;
+
+    VarintWriter(int initialSize) {
+        this.out = new ByteArrayOutputStream(initialSize);
+    }
+
+    VarintWriter writeByte(int b) {
+        out.write(b);
+        return this;
+    }
+
+    VarintWriter writeInt32(int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+        return this;
+    }
+
+    VarintWriter writeVarint(long v) {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+        return this;
+    }
+
+    /** Inteiro com sinal em zigzag, para que valores negativos pequenos continuem curtos. */
+    VarintWriter writeZigzag(long v) {
+        return writeVarint((v << 1) ^ (v >> 63));
+    }
+
+    VarintWriter writeBytes(byte[] bytes) {
+        writeVarint(bytes.length);
+        out.write(bytes, 0, bytes.length);
+        return this;
+    }
+
+    VarintWriter writeString(String s) {
+        return writeBytes(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+}
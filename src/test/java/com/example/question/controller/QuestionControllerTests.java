@@ -0,0 +1,251 @@
+package com.example.question.controller;
+
+import com.example.question.service.AnswerAnalytics;
+import com.example.question.service.CompiledQuestionnaire;
+import com.example.question.session.InMemorySessionStore;
+import com.example.question.session.SessionStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class QuestionControllerTests {
+
+	// perguntas contadas como apresentadas no funil, por código
+	private static final Map<String, Integer> presented = new ConcurrentHashMap<>();
+
+	@TestConfiguration
+	static class InMemorySessions {
+		@Bean
+		@Primary
+		SessionStore inMemorySessionStore() {
+			return new InMemorySessionStore();
+		}
+
+		@Bean
+		@Primary
+		AnswerAnalytics recordingAnalytics() {
+			return new AnswerAnalytics() {
+				@Override
+				public void presented(CompiledQuestionnaire graph, int id) {
+					presented.merge(graph.code(id), 1, Integer::sum);
+					super.presented(graph, id);
+				}
+			};
+		}
+	}
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private ResultActions step(String sessionId, String answers) throws Exception {
+		String body = "{\"sessionId\":\"" + sessionId + "\",\"questionnaire\":{\"questionnaireId\":\"1\",\"answers\":[" + answers + "]}}";
+		return mvc.perform(post("/question_next_step").contentType(MediaType.APPLICATION_JSON).content(body));
+	}
+
+	private static String answer(String questionCode, String value) {
+		return "{\"questionCode\":\"" + questionCode + "\",\"value\":\"" + value + "\"}";
+	}
+
+	@Test
+	void walksFlowAndResumesFromSavedProgress() throws Exception {
+		step("walk", "").andExpect(status().isOk()).andExpect(jsonPath("$.questions[0].code").value("FLOW"));
+		step("walk", answer("FLOW", "FLOW_PERSONAL")).andExpect(jsonPath("$.questions[0].code").value("P1"));
+		step("walk", answer("FLOW", "FLOW_PERSONAL") + "," + answer("P1", "Ana"))
+				.andExpect(jsonPath("$.questions[0].code").value("P2"));
+
+		step("walk", "").andExpect(jsonPath("$.questions[0].code").value("P2"));
+	}
+
+	@Test
+	void flowChangingEditPrunesOldBranch() throws Exception {
+		step("edit", answer("FLOW", "FLOW_PERSONAL") + "," + answer("P1", "Ana") + "," + answer("P2", "Dev"));
+		step("edit", answer("FLOW", "FLOW_PARENTS")).andExpect(jsonPath("$.questions[0].code").value("PAR1"));
+
+		step("edit", "").andExpect(jsonPath("$.questions[0].code").value("PAR1"));
+	}
+
+	@Test
+	void returnsSummaryAtEndOfFlow() throws Exception {
+		step("end", answer("FLOW", "FLOW_PERSONAL") + "," + answer("P1", "Ana") + "," + answer("P2", "Dev")
+				+ "," + answer("P3", "1990-01-01") + "," + answer("P4", "P4_YES"))
+				.andExpect(jsonPath("$.message").value("Fim do questionário"))
+				.andExpect(jsonPath("$.summary.length()").value(5))
+				.andExpect(jsonPath("$.summary[4].answer").value("P4_YES"));
+	}
+
+	@Test
+	void resentAnswerIsPresentedOnce() throws Exception {
+		int before = presented.getOrDefault("P1", 0);
+		step("resend", answer("FLOW", "FLOW_PERSONAL")).andExpect(jsonPath("$.questions[0].code").value("P1"));
+		step("resend", answer("FLOW", "FLOW_PERSONAL")).andExpect(jsonPath("$.questions[0].code").value("P1"));
+
+		assertEquals(before + 1, presented.getOrDefault("P1", 0));
+	}
+
+	@Test
+	void completedSessionIsCompactedAndStillEditable() throws Exception {
+		step("done", answer("FLOW", "FLOW_PERSONAL") + "," + answer("P1", "Ana") + "," + answer("P2", "Dev")
+				+ "," + answer("P3", "1990-01-01") + "," + answer("P4", "P4_YES"))
+				.andExpect(jsonPath("$.message").value("Fim do questionário"));
+
+		step("done", "").andExpect(jsonPath("$.summary.length()").value(5));
+		step("done", answer("FLOW", "FLOW_PARENTS")).andExpect(jsonPath("$.questions[0].code").value("PAR1"));
+	}
+
+	@Test
+	void revalidatesQuestionWithEtag() throws Exception {
+		String etag = step("etag", "").andExpect(status().isOk()).andExpect(header().exists(HttpHeaders.ETAG))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		// o passo (POST) nunca responde 304, mesmo com If-None-Match
+		String body = "{\"sessionId\":\"etag\",\"questionnaire\":{\"questionnaireId\":\"1\",\"answers\":[]}}";
+		mvc.perform(post("/question_next_step").contentType(MediaType.APPLICATION_JSON).content(body)
+						.header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isOk()).andExpect(header().string(HttpHeaders.ETAG, etag))
+				.andExpect(jsonPath("$.questions[0].code").value("FLOW"));
+
+		mvc.perform(get("/question/1/FLOW").header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag))
+				.andExpect(status().isNotModified());
+		// apenas ETags inteiras valem
+		mvc.perform(get("/question/1/FLOW").header(HttpHeaders.IF_NONE_MATCH, "\"" + etag.substring(2)))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.questions[0].code").value("FLOW"));
+		mvc.perform(get("/question/1/MISSING")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	void acceptsLegacyComboQuestions() throws Exception {
+		mvc.perform(post("/question_next_step").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"sessionId\":\"legacy\",\"questionnaire\":{\"questionnaireId\":\"1\","
+								+ "\"comboQuestions\":[{\"key\":\" FLOW \",\"value\":\"FLOW_PARENTS\"}]}}"))
+				.andExpect(jsonPath("$.questions[0].code").value("PAR1"));
+	}
+
+	@Test
+	void rejectsUnknownQuestionnaire() throws Exception {
+		mvc.perform(post("/question_next_step").contentType(MediaType.APPLICATION_JSON)
+						.content("{\"sessionId\":\"x\",\"questionnaire\":{\"questionnaireId\":\"missing\",\"answers\":[]}}"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void rejectsSessionIdsThatCollideWithOtherKeys() throws Exception {
+		step("x:v", "").andExpect(status().isBadRequest());
+		step("{x}", "").andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void appliesDeltaAnswersOnSessionVersion() throws Exception {
+		step("delta", answer("FLOW", "FLOW_PERSONAL")).andExpect(header().string("Session-Version", "1"));
+		deltaStep("delta", 1, answer("P1", "Ana"))
+				.andExpect(jsonPath("$.questions[0].code").value("P2"))
+				.andExpect(header().string("Session-Version", "2"));
+		// delta montado sobre uma versão antiga: nada é gravado e o cliente recebe a versão atual
+		deltaStep("delta", 1, answer("FLOW", "FLOW_PARENTS"))
+				.andExpect(status().isConflict())
+				.andExpect(jsonPath("$.sessionVersion").value(2));
+		// lista completa continua aceita; reenvios sem mudança não geram gravação
+		step("delta", answer("FLOW", "FLOW_PERSONAL") + "," + answer("P1", "Ana"))
+				.andExpect(jsonPath("$.questions[0].code").value("P2"))
+				.andExpect(header().string("Session-Version", "2"));
+	}
+
+	private ResultActions deltaStep(String sessionId, long sessionVersion, String answers) throws Exception {
+		String body = "{\"sessionId\":\"" + sessionId + "\",\"sessionVersion\":" + sessionVersion
+				+ ",\"questionnaire\":{\"questionnaireId\":\"1\",\"answers\":[" + answers + "]}}";
+		return mvc.perform(post("/question_next_step").contentType(MediaType.APPLICATION_JSON).content(body));
+	}
+
+	@Test
+	void rejectsInvalidAnswersWithoutSaving() throws Exception {
+		step("invalid", answer("FLOW", "FLOW_OTHER") + "," + answer("P3", "1990-02-30"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.errors.length()").value(2))
+				.andExpect(jsonPath("$.errors[0].questionCode").value("FLOW"))
+				.andExpect(jsonPath("$.errors[1].questionCode").value("P3"));
+		step("invalid", "").andExpect(jsonPath("$.questions[0].code").value("FLOW"));
+	}
+
+	@Test
+	void syncsManySessionsInBulk() throws Exception {
+		String lines = "{\"sessionId\":\"bulk-a\",\"questionnaire\":{\"questionnaireId\":\"1\",\"answers\":[" + answer("FLOW", "FLOW_PERSONAL") + "]}}\n"
+				+ "{\"sessionId\":\"bulk-b\",\"questionnaire\":{\"questionnaireId\":\"1\",\"answers\":[" + answer("FLOW", "FLOW_PARENTS") + "]}}\n"
+				+ "{\"sessionId\":\"bulk-a\",\"questionnaire\":{\"questionnaireId\":\"1\",\"answers\":[" + answer("P1", "Ana") + "]}}\n";
+		String body = mvc.perform(post("/question_next_step/bulk").contentType("application/x-ndjson").content(lines))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+
+		String[] results = body.split("\n");
+		assertEquals(3, results.length);
+		assertTrue(results[0].contains("\"code\":\"P1\""));
+		assertTrue(results[1].contains("\"code\":\"PAR1\""));
+		assertTrue(results[2].startsWith("{\"sessionId\":\"bulk-a\",\"status\":200"));
+		step("bulk-a", "").andExpect(jsonPath("$.questions[0].code").value("P2"));
+	}
+
+	@Test
+	void exportsSessionSummaries() throws Exception {
+		step("export-live", answer("FLOW", "FLOW_PERSONAL") + "," + answer("P1", "Ana"));
+		step("export-done", answer("FLOW", "FLOW_PERSONAL") + "," + answer("P1", "Ana") + "," + answer("P2", "Dev")
+				+ "," + answer("P3", "1990-01-01") + "," + answer("P4", "P4_YES"));
+
+		String ndjson = mvc.perform(get("/session_export")).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		String live = line(ndjson, "{\"sessionId\":\"export-live\"");
+		assertTrue(live.contains("\"status\":\"in_progress\""));
+		assertTrue(live.contains("{\"questionCode\":\"P1\",\"answer\":\"Ana\""));
+		String done = line(ndjson, "{\"sessionId\":\"export-done\"");
+		assertTrue(done.contains("\"status\":\"completed\""));
+		assertTrue(done.contains("\"completedAt\""));
+
+		String csv = mvc.perform(get("/session_export").param("format", "csv").param("status", "completed"))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString();
+		assertTrue(csv.startsWith("sessionId,status,questionnaireId,completedAt,questionCode,answer,creditBooked,nextActions\n"));
+		assertTrue(csv.contains("\nexport-done,completed,1,"));
+		assertFalse(csv.contains("export-live"));
+
+		mvc.perform(get("/session_export").param("format", "xml")).andExpect(status().isBadRequest());
+	}
+
+	private static String line(String ndjson, String prefix) {
+		for (String line : ndjson.split("\n")) {
+			if (line.startsWith(prefix)) return line;
+		}
+		throw new AssertionError("linha ausente: " + prefix);
+	}
+
+	@Test
+	void recordsStepPhaseMetrics() throws Exception {
+		step("metrics", answer("FLOW", "FLOW_PERSONAL") + "," + answer("P1", "Ana"));
+		step("metrics", answer("FLOW", "FLOW_PARENTS"));
+
+		assertTrue(meterRegistry.get("question.step.phase").tag("phase", "prune").timer().count() >= 1);
+		assertTrue(meterRegistry.get("question.step.pruned.answers").counter().count() >= 1);
+	}
+}
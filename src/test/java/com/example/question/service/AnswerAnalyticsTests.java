@@ -0,0 +1,39 @@
+package com.example.question.service;
+
+import com.example.question.model.Questionnaire;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AnswerAnalyticsTests {
+
+	@Test
+	void countsFunnelAndMovesEditedChoices() throws Exception {
+		CompiledQuestionnaire graph = CompiledQuestionnaire.compile(
+				new ObjectMapper().readValue(new File("questionnaire.json"), Questionnaire.class));
+		int flow = graph.idOf("FLOW");
+		AnswerAnalytics analytics = new AnswerAnalytics();
+
+		analytics.presented(graph, flow);
+		analytics.presented(graph, flow);
+		analytics.answered(graph, flow, null, "FLOW_PERSONAL");
+		analytics.answered(graph, flow, null, "FLOW_PERSONAL");
+		// edição: a contagem passa da opção anterior para a nova
+		analytics.answered(graph, flow, "FLOW_PERSONAL", "FLOW_PARENTS");
+		analytics.completed(graph);
+
+		Map<String, Long> fields = analytics.unsent(graph);
+		assertEquals(2L, fields.get("p:FLOW"));
+		assertEquals(2L, fields.get("a:FLOW"));
+		assertEquals(1L, fields.get("e:FLOW"));
+		assertEquals(1L, fields.get("c:FLOW:FLOW_PERSONAL"));
+		assertEquals(1L, fields.get("c:FLOW:FLOW_PARENTS"));
+		assertEquals(1L, fields.get("completed"));
+		assertNull(fields.get("p:P1"));
+	}
+}
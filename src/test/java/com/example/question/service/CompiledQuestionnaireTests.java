@@ -0,0 +1,165 @@
+package com.example.question.service;
+
+import com.example.question.model.ChildQuestion;
+import com.example.question.model.Question;
+import com.example.question.model.Questionnaire;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledQuestionnaireTests {
+
+	private static CompiledQuestionnaire graph;
+
+	@BeforeAll
+	static void load() throws Exception {
+		Questionnaire questionnaire = new ObjectMapper().readValue(new File("questionnaire.json"), Questionnaire.class);
+		graph = CompiledQuestionnaire.compile(questionnaire);
+	}
+
+	@Test
+	void indexesQuestionsByCode() {
+		assertEquals(0, graph.rootId());
+		assertEquals("FLOW", graph.code(graph.idOf("FLOW")));
+		assertEquals(CompiledQuestionnaire.NONE, graph.idOf("UNKNOWN"));
+	}
+
+	@Test
+	void resolvesChildrenThroughAnswerTable() {
+		int flow = graph.idOf("FLOW");
+		assertEquals("P1", graph.nextCode(flow, "FLOW_PERSONAL"));
+		assertEquals(graph.idOf("PAR1"), graph.nextId(flow, "FLOW_PARENTS"));
+		assertNull(graph.nextCode(flow, "INVALID"));
+		assertEquals("P2", graph.nextCode(graph.idOf("P1"), "qualquer valor"));
+		assertNull(graph.nextCode(graph.idOf("P4"), "P4_YES"));
+	}
+
+	@Test
+	void answersSubtreeQueriesWithBitsets() {
+		BitSet answered = graph.toIdSet(List.of("PAR2"));
+		assertTrue(graph.subtreeIntersects(graph.idOf("FLOW"), answered));
+		assertTrue(graph.subtreeIntersects(graph.idOf("PAR1"), answered));
+		assertFalse(graph.subtreeIntersects(graph.idOf("P1"), answered));
+		assertTrue(graph.inSubtree(graph.idOf("P1"), graph.idOf("P4")));
+
+		BitSet all = graph.toIdSet(List.of("FLOW", "P1", "P2", "PAR1"));
+		graph.clearSubtree(graph.idOf("P1"), all);
+		assertEquals(graph.toIdSet(List.of("FLOW", "PAR1")), all);
+	}
+
+	@Test
+	void updatesBranchFromFirstAffectedQuestion() {
+		SessionAnswers answers = SessionAnswers.of(graph, List.of(
+				java.util.Map.of("questionCode", "FLOW", "value", "FLOW_PERSONAL"),
+				java.util.Map.of("questionCode", "P1", "value", "Ana")));
+		BranchCursor cursor = BranchCursor.restore(graph, BranchCursor.build(answers).codes(), graph.structureHash());
+		assertEquals(List.of("FLOW", "P1"), cursor.codes());
+		assertNull(BranchCursor.restore(graph, cursor.codes(), graph.structureHash() + 1));
+
+		answers.put("P2", "2024-05-01");
+		cursor.update(answers, answers.changedIds());
+		assertEquals(List.of("FLOW", "P1", "P2"), cursor.codes());
+
+		answers.clearSubtree(graph.idOf("P1"));
+		answers.put("FLOW", "FLOW_PARENTS");
+		cursor.update(answers, answers.changedIds());
+		assertEquals(BranchCursor.build(answers).codes(), cursor.codes());
+		assertEquals(List.of("FLOW"), cursor.codes());
+	}
+
+	@Test
+	void compilesAnswerValidators() {
+		AnswerValidator date = graph.validator(graph.idOf("P3"));
+		assertNull(date.check("2024-02-29"));
+		assertNotNull(date.check("2023-02-29"));
+		assertNotNull(date.check("2024-1-01"));
+		assertNotNull(date.check(20240101));
+
+		AnswerValidator option = graph.validator(graph.idOf("P4"));
+		assertNull(option.check("P4_NO"));
+		assertNotNull(option.check("P4_MAYBE"));
+
+		AnswerValidator amount = graph.validator(graph.idOf("PAR2"));
+		assertNull(amount.check(java.util.Map.of("amount", "-1500.50", "currency", "BRL")));
+		assertNull(amount.check(java.util.Map.of("amount", 1.5e3, "currency", "USD")));
+		assertNotNull(amount.check(java.util.Map.of("amount", "1.500,50", "currency", "BRL")));
+		assertNotNull(amount.check(java.util.Map.of("amount", "10", "currency", "XYZ1")));
+
+		assertTrue(AnswerValidator.isIsoDateTime("2024-05-01T10:15"));
+		assertTrue(AnswerValidator.isIsoDateTime("2024-05-01T10:15:30.123"));
+		assertFalse(AnswerValidator.isIsoDateTime("2024-05-01T24:00"));
+		assertFalse(AnswerValidator.isIsoDateTime("2024-05-01 10:15:30"));
+	}
+
+	@Test
+	void rejectsCyclesDanglingChildrenAndUnreachableQuestions() {
+		QuestionnaireValidator.validateStructure(graph);
+		assertTrue(graph.isAcyclic());
+		assertTrue(graph.maxDepth() > 1);
+
+		CompiledQuestionnaire cyclic = CompiledQuestionnaire.compile(chain(3, "Q0"));
+		assertFalse(cyclic.isAcyclic());
+		assertEquals(List.of("Q0", "Q1", "Q2"), cyclic.findCycle());
+		IllegalStateException error = assertThrows(IllegalStateException.class, () -> QuestionnaireValidator.validateStructure(cyclic));
+		assertTrue(error.getMessage().contains("Q0 -> Q1 -> Q2"));
+
+		CompiledQuestionnaire dangling = CompiledQuestionnaire.compile(chain(2, "Q9"));
+		assertEquals(List.of("Q1 -> Q9"), dangling.danglingReferences());
+		assertThrows(IllegalStateException.class, () -> QuestionnaireValidator.validateStructure(dangling));
+
+		Questionnaire orphan = chain(3, null);
+		orphan.getQuestions().get(0).setChildQuestion(null);
+		assertEquals(List.of("Q1", "Q2"), CompiledQuestionnaire.compile(orphan).unreachable());
+		assertThrows(IllegalStateException.class, () -> QuestionnaireValidator.validateStructure(CompiledQuestionnaire.compile(orphan)));
+	}
+
+	@Test
+	void walksDeepQuestionnairesWithoutDepthLimit() {
+		int size = 5000;
+		CompiledQuestionnaire deep = CompiledQuestionnaire.compile(chain(size, null));
+		QuestionnaireValidator.validateStructure(deep);
+		assertEquals(size, deep.maxDepth());
+		assertTrue(deep.inSubtree(deep.rootId(), deep.idOf("Q" + (size - 1))));
+		// o peso no catálogo acompanha os descendentes (n² bits), não só a quantidade de perguntas
+		assertTrue(deep.footprint() >= (long) size * size / Long.SIZE);
+
+		List<java.util.Map<String, Object>> all = new java.util.ArrayList<>();
+		for (int i = 0; i < size; i++) all.add(java.util.Map.of("questionCode", "Q" + i, "value", "v" + i));
+		assertEquals(size, BranchCursor.build(SessionAnswers.of(deep, all)).size());
+		assertEquals(size, BranchCursor.build(SessionAnswers.of(deep, all.subList(size - 1, size))).size());
+	}
+
+	/**
+	 * Cadeia Q0 -> Q1 -> ... de perguntas simple-text; a última aponta para `lastChild` (ou encerra).
+	 */
+	private static Questionnaire chain(int size, String lastChild) {
+		List<Question> questions = new java.util.ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			Question q = new Question();
+			q.setCode("Q" + i);
+			q.setAnswerDataTypeDescription("simple-text");
+			String child = i + 1 < size ? "Q" + (i + 1) : lastChild;
+			if (child != null) {
+				ChildQuestion c = new ChildQuestion();
+				c.setCode(child);
+				q.setChildQuestion(c);
+			}
+			questions.add(q);
+		}
+		Questionnaire questionnaire = new Questionnaire();
+		questionnaire.setQuestionnaireId("chain");
+		questionnaire.setQuestions(questions);
+		return questionnaire;
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.question.service;
+
+import com.example.question.model.Questionnaire;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QuestionnaireImageTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void mapsImageWithSameGraphAsJson() throws Exception {
+		Path json = Files.copy(Paths.get("questionnaire.json"), dir.resolve("questionnaire.json"));
+		Path image = dir.resolve("questionnaire.qimg");
+		QuestionnaireImage.build(json, image);
+
+		ObjectMapper mapper = new ObjectMapper();
+		CompiledQuestionnaire expected = CompiledQuestionnaire.compile(mapper.readValue(json.toFile(), Questionnaire.class));
+		CompiledQuestionnaire mapped = QuestionnaireImage.load(image, json);
+
+		assertEquals(mapper.writeValueAsString(expected.getSource()), mapper.writeValueAsString(mapped.getSource()));
+		assertEquals(expected.fingerprint(), mapped.fingerprint());
+		assertEquals(expected.structureHash(), mapped.structureHash());
+		assertEquals(expected.maxDepth(), mapped.maxDepth());
+		for (int id = 0; id < expected.size(); id++) assertEquals(expected.subtree(id), mapped.subtree(id));
+		assertEquals("P1", mapped.nextCode(mapped.idOf("FLOW"), "FLOW_PERSONAL"));
+
+		// imagem gerada pelo build nas classes compiladas
+		CompiledQuestionnaire built = QuestionnaireImage.loadResource("questionnaire.qimg", json);
+		assertEquals(expected.fingerprint(), built.fingerprint());
+	}
+
+	@Test
+	void fallsBackWhenImageIsStaleAndRejectsCorruptedImages() throws Exception {
+		Path json = Files.copy(Paths.get("questionnaire.json"), dir.resolve("questionnaire.json"));
+		Path image = dir.resolve("questionnaire.qimg");
+		QuestionnaireImage.build(json, image);
+
+		Files.writeString(json, Files.readString(json).replace("FLOW_PERSONAL", "FLOW_SELF"));
+		assertNull(QuestionnaireImage.load(image, json));
+		assertNull(QuestionnaireImage.load(dir.resolve("missing.qimg"), json));
+		assertNull(QuestionnaireImage.loadResource("missing.qimg", json));
+
+		byte[] bytes = Files.readAllBytes(image);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(image, bytes);
+		assertThrows(IllegalStateException.class, () -> QuestionnaireImage.load(image, dir.resolve("missing.json")));
+	}
+}
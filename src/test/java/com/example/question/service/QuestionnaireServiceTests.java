@@ -0,0 +1,62 @@
+package com.example.question.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuestionnaireServiceTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void reloadPublishesNewSnapshotAndKeepsCurrentOnInvalidDefinition() throws Exception {
+		Path file = dir.resolve("questionnaire.json");
+		Files.copy(Paths.get("questionnaire.json"), file);
+		QuestionnaireService service = new QuestionnaireService(file.toString(), dir.resolve("questionnaires").toString(), 1000, "");
+		CompiledQuestionnaire first = service.snapshot();
+
+		assertTrue(service.reload());
+		CompiledQuestionnaire second = service.snapshot();
+		assertNotSame(first, second);
+		assertEquals(first.size(), second.size());
+
+		Files.writeString(file, "{\"questionnaireId\":\"1\",\"questions\":[]}");
+		assertFalse(service.reload());
+		assertSame(second, service.snapshot());
+		assertEquals(1, service.getLoadStats().getReloads());
+		assertEquals(1, service.getLoadStats().getFailures());
+	}
+
+	@Test
+	void resolvesAdditionalQuestionnairesFromDirectoryOnFirstUse() throws Exception {
+		Path file = dir.resolve("questionnaire.json");
+		Files.copy(Paths.get("questionnaire.json"), file);
+		Path catalog = Files.createDirectory(dir.resolve("questionnaires"));
+		String definition = Files.readString(file).replaceFirst("\"questionnaireId\": \"1\"", "\"questionnaireId\": \"2\"");
+		Files.writeString(catalog.resolve("2.json"), definition);
+		QuestionnaireService service = new QuestionnaireService(file.toString(), catalog.toString(), 1000, "");
+
+		assertSame(service.snapshot(), service.snapshot("1"));
+		assertEquals("2", service.snapshot("2").getQuestionnaireId());
+		assertSame(service.snapshot("2"), service.snapshot("2"));
+		assertNull(service.snapshot("3"));
+		assertNull(service.snapshot("../questionnaire"));
+		assertEquals(1, service.getRegistry().getCache().estimatedSize());
+
+		// ausências não ficam no cache: uma definição criada depois é encontrada
+		Files.writeString(catalog.resolve("3.json"), definition.replaceFirst("\"questionnaireId\": \"2\"", "\"questionnaireId\": \"3\""));
+		assertEquals("3", service.snapshot("3").getQuestionnaireId());
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.example.question.session;
+
+import com.example.question.model.Questionnaire;
+import com.example.question.model.SessionState;
+import com.example.question.service.CompiledQuestionnaire;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinarySessionCodecTests {
+
+	private static CompiledQuestionnaire compiled;
+	private static SessionSymbols symbols;
+	private static BinarySessionCodec codec;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		Questionnaire questionnaire = new ObjectMapper().readValue(new File("questionnaire.json"), Questionnaire.class);
+		compiled = CompiledQuestionnaire.compile(questionnaire);
+		symbols = SessionSymbols.of(compiled);
+		SessionSymbolTable table = new SessionSymbolTable(null, null) {
+			@Override
+			SessionSymbols forEncoding(String questionnaireId) {
+				return symbols;
+			}
+
+			@Override
+			SessionSymbols forDecoding(String questionnaireId, int fingerprint) {
+				return fingerprint == symbols.fingerprint ? symbols : null;
+			}
+		};
+		codec = new BinarySessionCodec(table);
+	}
+
+	private static Map<String, Object> answer(String questionCode, Object value) {
+		Map<String, Object> m = new HashMap<>();
+		m.put("questionCode", questionCode);
+		m.put("value", value);
+		return m;
+	}
+
+	private static SessionState sample() {
+		Map<String, Object> amount = new LinkedHashMap<>();
+		amount.put("amount", "1500.50");
+		amount.put("currency", "BRL");
+		Map<String, Object> doubleAmount = new LinkedHashMap<>();
+		doubleAmount.put("amount", 12.5);
+		List<Map<String, Object>> answers = new ArrayList<>();
+		answers.add(answer("FLOW", "FLOW_PERSONAL"));
+		answers.add(answer("P1", "Ana"));
+		answers.add(answer("P3", "1990-01-31"));
+		answers.add(answer("P2", "2024-05-01T10:15:30"));
+		answers.add(answer("PAR2", amount));
+		answers.add(answer("PAR3", doubleAmount));
+		answers.add(answer("P4", "P4_NO"));
+		answers.add(answer("PAR1", null));
+		answers.add(answer("PAR4", true));
+		answers.add(answer("UNKNOWN", List.of(1, "x")));
+		SessionState state = new SessionState("1", answers);
+		state.setPath(List.of("FLOW", "P1", "P2"));
+		state.setPathStructure(42);
+		return state;
+	}
+
+	@Test
+	void roundTripsEveryValueShape() {
+		SessionState state = sample();
+		byte[] bytes = codec.encode(state);
+
+		assertTrue(BinarySessionCodec.isBinary(bytes));
+		assertEquals(state, codec.decode(bytes));
+	}
+
+	@Test
+	void isSmallerThanLegacyJsonAndReadsIt() {
+		SessionState state = sample();
+		byte[] json = new JsonSessionCodec().encode(state);
+		byte[] binary = codec.encode(state);
+
+		assertTrue(binary.length * 4 < json.length, binary.length + " vs " + json.length);
+		assertEquals(state, codec.decode(json));
+		assertEquals(state, new JsonSessionCodec(codec).decode(binary));
+	}
+
+	/** Tabela de códigos sobre um "Redis" em memória, com o questionário compilado como versão atual. */
+	private static SessionSymbolTable redisBackedTable(Map<String, byte[]> redis) {
+		return new SessionSymbolTable(null, null) {
+			@Override
+			CompiledQuestionnaire snapshot(String questionnaireId) {
+				return compiled;
+			}
+
+			@Override
+			byte[] loadStored(String key) {
+				return redis.get(key);
+			}
+
+			@Override
+			void storeIfAbsent(String key, byte[] table) {
+				redis.putIfAbsent(key, table);
+			}
+		};
+	}
+
+	@Test
+	void decodesAndRepublishesAfterSymbolKeyIsEvicted() {
+		Map<String, byte[]> redis = new HashMap<>();
+		SessionState state = sample();
+		byte[] bytes = new BinarySessionCodec(redisBackedTable(redis)).encode(state);
+		String key = SessionSymbolTable.key(compiled.getQuestionnaireId(), compiled.fingerprint());
+		assertNotNull(redis.remove(key));
+
+		assertEquals(state, new BinarySessionCodec(redisBackedTable(redis)).decode(bytes));
+		assertNotNull(redis.get(key));
+	}
+
+}
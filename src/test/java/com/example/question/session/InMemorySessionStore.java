@@ -0,0 +1,100 @@
+package com.example.question.session;
+
+import com.example.question.model.CompletedSession;
+import com.example.question.model.SessionState;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Armazenamento em memória com a mesma semântica do Redis (versão, gravação condicionada, ramo
+ * persistido e registro de sessão concluída), para testes e para o harness de carga sem serviços externos.
+ * Uma latência opcional por operação simula a ida ao Redis (e seus picos) no harness.
+ */
+public class InMemorySessionStore implements SessionStore {
+
+	private final Map<String, SessionState> sessions = new ConcurrentHashMap<>();
+	private final Map<String, CompletedSession> completed = new ConcurrentHashMap<>();
+	private volatile long latencyNanos;
+
+	public void setLatency(Duration latency) {
+		this.latencyNanos = latency.toNanos();
+	}
+
+	private void roundTrip() {
+		if (latencyNanos > 0) LockSupport.parkNanos(latencyNanos);
+	}
+
+	@Override
+	public SessionState load(String sessionId) {
+		roundTrip();
+		SessionState stored = sessions.get(sessionId);
+		if (stored == null) return null;
+		SessionState copy = new SessionState(stored.getQuestionnaireId(), new ArrayList<>(stored.getAnswers()));
+		copy.setVersion(stored.getVersion());
+		copy.setPath(stored.getPath());
+		copy.setPathStructure(stored.getPathStructure());
+		return copy;
+	}
+
+	@Override
+	public boolean save(String sessionId, String questionnaireId, List<Map<String, Object>> merged, SessionChanges changes) {
+		roundTrip();
+		boolean[] saved = {false};
+		sessions.compute(sessionId, (id, stored) -> {
+			long version = stored == null ? 0 : stored.getVersion();
+			if (changes.getExpectedVersion() != SessionChanges.ANY_VERSION && changes.getExpectedVersion() != version) return stored;
+			SessionState next = new SessionState(questionnaireId, new ArrayList<>(merged));
+			next.setVersion(version + 1);
+			SessionState pathFrom = changes.isPathChanged() || stored == null ? null : stored;
+			next.setPath(pathFrom == null ? changes.getPath() : pathFrom.getPath());
+			next.setPathStructure(pathFrom == null ? changes.getPathStructure() : pathFrom.getPathStructure());
+			saved[0] = true;
+			return next;
+		});
+		return saved[0];
+	}
+
+	@Override
+	public void delete(String sessionId) {
+		sessions.remove(sessionId);
+	}
+
+	@Override
+	public boolean complete(String sessionId, long expectedVersion, CompletedSession record) {
+		roundTrip();
+		boolean[] applied = {false};
+		sessions.compute(sessionId, (id, stored) -> {
+			long version = stored == null ? 0 : stored.getVersion();
+			if (expectedVersion != SessionChanges.ANY_VERSION && expectedVersion != version) return stored;
+			completed.put(sessionId, record);
+			applied[0] = true;
+			return null;
+		});
+		return applied[0];
+	}
+
+	@Override
+	public CompletedSession loadCompleted(String sessionId) {
+		roundTrip();
+		return completed.get(sessionId);
+	}
+
+	@Override
+	public void scanIds(boolean completedOnly, int batchSize, Consumer<List<String>> batches) {
+		List<String> batch = new ArrayList<>(batchSize);
+		for (String sessionId : (completedOnly ? completed : sessions).keySet()) {
+			batch.add(sessionId);
+			if (batch.size() == batchSize) {
+				batches.accept(batch);
+				batch = new ArrayList<>(batchSize);
+			}
+		}
+		if (!batch.isEmpty()) batches.accept(batch);
+	}
+}
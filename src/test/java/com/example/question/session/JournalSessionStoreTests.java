@@ -0,0 +1,74 @@
+package com.example.question.session;
+
+import com.example.question.model.SessionState;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class JournalSessionStoreTests {
+
+	private static final GenericJackson2JsonRedisSerializer JSON = new GenericJackson2JsonRedisSerializer();
+	private final SessionCodec codec = new JsonSessionCodec();
+
+	@Test
+	void replaysTailOverSnapshot() {
+		SessionState snapshot = new SessionState("1", new ArrayList<>(List.of(answer("FLOW", "FLOW_PERSONAL"), answer("P1", "Ana"))));
+		snapshot.setPath(List.of("FLOW", "P1"));
+		snapshot.setPathStructure(7);
+		List<Object> tail = List.of(
+				event("10-0", 3, JournalSessionStore.ANSWER, "P2", JSON.serialize("Dev")),
+				event("11-0", 4, JournalSessionStore.PRUNE, "", JSON.serialize(new ArrayList<>(List.of("P1", "P2")))),
+				event("11-1", 4, JournalSessionStore.ANSWER, "FLOW", JSON.serialize("FLOW_PARENTS")),
+				event("11-2", 4, JournalSessionStore.PATH, "", new byte[0]));
+
+		JournalSessionStore.Replayed replayed = JournalSessionStore.replay(codec, ascii("4:100:9-0:4"), codec.encode(snapshot), tail);
+
+		SessionState state = replayed.state();
+		assertEquals("1", state.getQuestionnaireId());
+		assertEquals(4, state.getVersion());
+		assertEquals(List.of(answer("FLOW", "FLOW_PARENTS")), state.getAnswers());
+		assertNull(state.getPath());
+		assertEquals("11-2", replayed.lastId());
+		assertEquals(4, replayed.tail());
+	}
+
+	@Test
+	void startEventResetsState() {
+		SessionState snapshot = new SessionState("1", new ArrayList<>(List.of(answer("FLOW", "FLOW_PERSONAL"))));
+		List<Object> tail = List.of(
+				event("20-0", 6, JournalSessionStore.START, "2", new byte[0]),
+				event("20-1", 6, JournalSessionStore.ANSWER, "Q1", JSON.serialize("x")));
+
+		SessionState state = JournalSessionStore.replay(codec, ascii("6"), codec.encode(snapshot), tail).state();
+
+		assertEquals("2", state.getQuestionnaireId());
+		assertEquals(List.of(answer("Q1", "x")), state.getAnswers());
+		// sem cauda o snapshot (ou uma sessão do modo value) é o estado
+		assertEquals(snapshot.getAnswers(), JournalSessionStore.replay(codec, ascii("5:100"), codec.encode(snapshot), List.of()).state().getAnswers());
+	}
+
+	private static Object event(String id, long version, String type, String key, byte[] data) {
+		return List.of(ascii(id), List.of(ascii("v"), ascii(Long.toString(version)), ascii("e"), ascii(type),
+				ascii("k"), key.getBytes(StandardCharsets.UTF_8),
+				ascii("d"), data));
+	}
+
+	private static Map<String, Object> answer(String code, Object value) {
+		Map<String, Object> m = new HashMap<>();
+		m.put("questionCode", code);
+		m.put("value", value);
+		return m;
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,100 @@
+package com.example.question.session;
+
+import com.example.question.model.CompletedSession;
+import com.example.question.model.SessionState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class NearCachedSessionStoreTests {
+
+	private CountingStore backing;
+	private SessionInvalidation invalidation;
+	private NearCachedSessionStore store;
+
+	@BeforeEach
+	void setUp() {
+		backing = new CountingStore();
+		invalidation = new SessionInvalidation();
+		store = new NearCachedSessionStore(100, Duration.ofMinutes(1));
+		ReflectionTestUtils.setField(store, "delegate", backing);
+		ReflectionTestUtils.setField(store, "invalidation", invalidation);
+		store.subscribe();
+	}
+
+	@Test
+	void servesConsecutiveStepsFromMemory() {
+		List<Map<String, Object>> answers = List.of(Map.of("questionCode", "FLOW", "value", "FLOW_PERSONAL"));
+		store.save("s", "1", answers, new SessionChanges().put("FLOW", "FLOW_PERSONAL").expectVersion(0));
+
+		SessionState state = store.load("s", List.of("FLOW"));
+		assertEquals(1, state.getVersion());
+		assertEquals(answers, state.getAnswers());
+		assertEquals(0, backing.loads);
+	}
+
+	@Test
+	void conflictAndForeignWritesEvictTheEntry() {
+		store.save("s", "1", List.of(), new SessionChanges().expectVersion(0));
+		backing.version = 5;
+		assertFalse(store.save("s", "1", List.of(), new SessionChanges().expectVersion(1)));
+		assertNull(store.getCache().getIfPresent("s"));
+
+		store.load("s");
+		invalidation.onMessage(new DefaultMessage(SessionInvalidation.CHANNEL.getBytes(StandardCharsets.UTF_8),
+				"other-node s".getBytes(StandardCharsets.UTF_8)), null);
+		assertNull(store.getCache().getIfPresent("s"));
+		assertEquals(1, invalidation.getReceived());
+	}
+
+	private static class CountingStore implements SessionStore {
+		long version;
+		int loads;
+		List<Map<String, Object>> answers = new ArrayList<>();
+
+		@Override
+		public SessionState load(String sessionId) {
+			loads++;
+			SessionState state = new SessionState("1", new ArrayList<>(answers));
+			state.setVersion(version);
+			return state;
+		}
+
+		@Override
+		public boolean save(String sessionId, String questionnaireId, List<Map<String, Object>> merged, SessionChanges changes) {
+			if (changes.getExpectedVersion() != version) return false;
+			answers = new ArrayList<>(merged);
+			version++;
+			return true;
+		}
+
+		@Override
+		public void delete(String sessionId) {
+		}
+
+		@Override
+		public boolean complete(String sessionId, long expectedVersion, CompletedSession completed) {
+			return true;
+		}
+
+		@Override
+		public CompletedSession loadCompleted(String sessionId) {
+			return null;
+		}
+
+		@Override
+		public void scanIds(boolean completed, int batchSize, java.util.function.Consumer<List<String>> batches) {
+		}
+	}
+}